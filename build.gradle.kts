@@ -26,6 +26,24 @@ javafx {
     )
 }
 
+// ===== Benchmarks (JMH) =====
+// окремий source set src/jmh/java; запуск: ./gradlew jmh
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[jmh.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+
+// ===== End-to-end throughput =====
+// окремий source set src/e2e/java: локальний Range-сервер + DownloadManager; запуск: ./gradlew e2e
+val e2e: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[e2e.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+
 dependencies {
     // SQLite
     implementation("org.xerial:sqlite-jdbc:3.46.1.0")
@@ -37,6 +55,10 @@ dependencies {
     // Tests
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+
+    // Benchmarks
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
 }
 
 application {
@@ -47,3 +69,44 @@ application {
 tasks.test {
     useJUnitPlatform()
 }
+
+// усі попередження javac: збірка має лишатися без них
+tasks.withType<JavaCompile>().configureEach {
+    options.compilerArgs.add("-Xlint:all")
+}
+
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs JMH benchmarks; results go to build/reports/jmh/results.json"
+
+    val results = layout.buildDirectory.file("reports/jmh/results.json")
+
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args = listOf("-rf", "json", "-rff", results.get().asFile.path)
+
+    // -Pjmh.include=OutputMode — запустити лише частину бенчмарків
+    providers.gradleProperty("jmh.include").orNull?.let { args(it) }
+
+    doFirst { results.get().asFile.parentFile.mkdirs() }
+}
+
+tasks.register<JavaExec>("e2e") {
+    group = "verification"
+    description = "Runs the offline end-to-end throughput suite; results go to build/reports/e2e/results.json"
+
+    val results = layout.buildDirectory.file("reports/e2e/results.json")
+
+    classpath = e2e.runtimeClasspath
+    mainClass.set("org.example.e2e.ThroughputSuite")
+    jvmArgs("-Xmx1g")
+    args("--out=" + results.get().asFile.path)
+
+    // -Pe2e.sizes=64K,16M,4G -Pe2e.bandwidth=10M -Pe2e.latency=20 -Pe2e.dropRate=0.05 ...
+    listOf("sizes", "modes", "downloaders", "bandwidth", "latency", "errorRate", "dropRate", "stallRate",
+        "connections", "timeout", "warmup").forEach { key ->
+        providers.gradleProperty("e2e.$key").orNull?.let { args("--$key=$it") }
+    }
+
+    doFirst { results.get().asFile.parentFile.mkdirs() }
+}
@@ -0,0 +1,210 @@
+package org.example.e2e;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Локальна заміна файлового сервера на com.sun.net.httpserver.
+ * Вміє HEAD, один діапазон у Range, ETag та If-Range, а також
+ * обмеження швидкості на з'єднання, затримку перед відповіддю
+ * і три види збоїв: 503 замість відповіді, обрив посеред тіла і зависання посеред тіла.
+ */
+public class RangeServer implements AutoCloseable {
+
+    private static final int CHUNK = 16 * 1024;
+    // зависла відповідь тримає з'єднання стільки, потім обривається
+    private static final long STALL_NANOS = 60_000_000_000L;
+
+    /**
+     * @param bytesPerSecPerConnection 0 — без обмеження
+     * @param latencyMs затримка перед заголовками відповіді
+     * @param errorRate частка запитів за даними, що отримують 503
+     * @param dropRate частка запитів за даними, що обриваються посеред тіла
+     * @param stallRate частка запитів за даними, що зависають посеред тіла
+     */
+    public record Config(long bytesPerSecPerConnection, long latencyMs, double errorRate, double dropRate,
+                         double stallRate) {
+        public static Config unlimited() {
+            return new Config(0, 0, 0, 0, 0);
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private volatile SyntheticContent content;
+    private volatile Config config = Config.unlimited();
+
+    // процесорний час потоків сервера: його віднімаємо від CPU процесу
+    private final AtomicLong cpuNanos = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong faults = new AtomicLong();
+
+    public RangeServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "range-server");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/file", this::handle);
+        server.start();
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/file";
+    }
+
+    public void serve(SyntheticContent content, Config config) {
+        this.content = content;
+        this.config = config;
+    }
+
+    public long getCpuNanos() { return cpuNanos.get(); }
+    public long getRequests() { return requests.get(); }
+    public long getFaults() { return faults.get(); }
+
+    private void handle(HttpExchange ex) throws IOException {
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        try (ex) {
+            respond(ex, content, config);
+        } catch (IOException ignored) {
+            // клієнт закрив з'єднання (пауза, скасування) — для сервера це норма
+        } finally {
+            cpuNanos.addAndGet(threads.getCurrentThreadCpuTime() - cpuStart);
+        }
+    }
+
+    private void respond(HttpExchange ex, SyntheticContent c, Config cfg) throws IOException {
+        requests.incrementAndGet();
+        long size = c.size();
+
+        ex.getResponseHeaders().add("Accept-Ranges", "bytes");
+        ex.getResponseHeaders().add("ETag", c.etag());
+        ex.getResponseHeaders().add("Content-Type", "application/octet-stream");
+
+        if (cfg.latencyMs() > 0) {
+            LockSupport.parkNanos(cfg.latencyMs() * 1_000_000);
+        }
+
+        if ("HEAD".equals(ex.getRequestMethod())) {
+            ex.getResponseHeaders().add("Content-Length", Long.toString(size));
+            ex.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        if (rnd.nextDouble() < cfg.errorRate()) {
+            faults.incrementAndGet();
+            ex.sendResponseHeaders(503, -1);
+            return;
+        }
+
+        long from = 0;
+        long to = size - 1;
+        int code = 200;
+
+        String range = ex.getRequestHeaders().getFirst("Range");
+        String ifRange = ex.getRequestHeaders().getFirst("If-Range");
+        // If-Range з чужим ETag — файл змінився, віддаємо його повністю
+        if (range != null && (ifRange == null || ifRange.equals(c.etag()))) {
+            long[] r = parseRange(range, size);
+            if (r == null) {
+                ex.getResponseHeaders().add("Content-Range", "bytes */" + size);
+                ex.sendResponseHeaders(416, -1);
+                return;
+            }
+            from = r[0];
+            to = r[1];
+            code = 206;
+            ex.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + to + "/" + size);
+        }
+
+        long length = to - from + 1;
+        // обрив: віддаємо випадкову частину тіла і закриваємо з'єднання
+        long cutAt = rnd.nextDouble() < cfg.dropRate() ? rnd.nextLong(length) : -1;
+        // зависання: частина тіла, далі тиша з відкритим з'єднанням
+        long stallAt = rnd.nextDouble() < cfg.stallRate() ? rnd.nextLong(length) : -1;
+
+        ex.sendResponseHeaders(code, length);
+        OutputStream out = ex.getResponseBody();
+
+        byte[] buf = new byte[CHUNK];
+        long rate = cfg.bytesPerSecPerConnection();
+        long started = System.nanoTime();
+        long sent = 0;
+
+        while (sent < length) {
+            if (cutAt >= 0 && sent >= cutAt) {
+                faults.incrementAndGet();
+                throw new IOException("injected connection drop");
+            }
+            if (stallAt >= 0 && sent >= stallAt) {
+                faults.incrementAndGet();
+                out.flush();
+                LockSupport.parkNanos(STALL_NANOS);
+                throw new IOException("injected stall");
+            }
+
+            int n = (int) Math.min(buf.length, length - sent);
+            c.fill(from + sent, buf, 0, n);
+            out.write(buf, 0, n);
+            sent += n;
+
+            if (rate > 0) {
+                long due = started + sent * 1_000_000_000L / rate;
+                long wait = due - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+            }
+        }
+        out.close();
+    }
+
+    // bytes=a-b, bytes=a- або bytes=-n; кілька діапазонів не підтримуємо
+    static long[] parseRange(String header, long size) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) return null;
+
+        String spec = header.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+
+        try {
+            String a = spec.substring(0, dash).trim();
+            String b = spec.substring(dash + 1).trim();
+
+            long from;
+            long to;
+            if (a.isEmpty()) {
+                long suffix = Long.parseLong(b);
+                from = Math.max(0, size - suffix);
+                to = size - 1;
+            } else {
+                from = Long.parseLong(a);
+                to = b.isEmpty() ? size - 1 : Math.min(size - 1, Long.parseLong(b));
+            }
+            return from <= to && from < size ? new long[]{from, to} : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
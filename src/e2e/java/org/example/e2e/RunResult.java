@@ -0,0 +1,41 @@
+package org.example.e2e;
+
+/** Один прогін: розмір × режим запису × завантажувач. */
+public record RunResult(
+        long size,
+        String mode,
+        String downloader,
+        String status,
+        boolean verified,
+        long wallNanos,
+        long ttfbNanos,
+        long cpuNanos,
+        long peakHeapBytes,
+        long peakDirectBytes,
+        long requests,
+        long faults
+) {
+
+    public double mbPerSec() {
+        return wallNanos <= 0 ? 0 : size / 1e6 / (wallNanos / 1e9);
+    }
+
+    // частка одного ядра, яку з'їв клієнт
+    public double cpuLoad() {
+        return wallNanos <= 0 ? 0 : (double) cpuNanos / wallNanos;
+    }
+
+    public boolean ok() {
+        return "COMPLETED".equals(status) && verified;
+    }
+
+    public String toJson() {
+        return String.format(java.util.Locale.ROOT,
+                "{\"size\":%d,\"mode\":\"%s\",\"downloader\":\"%s\",\"status\":\"%s\",\"verified\":%b,"
+                        + "\"mbPerSec\":%.3f,\"wallMs\":%.3f,\"ttfbMs\":%.3f,\"cpuMs\":%.3f,\"cpuLoad\":%.3f,"
+                        + "\"peakHeapBytes\":%d,\"peakDirectBytes\":%d,\"requests\":%d,\"faults\":%d}",
+                size, mode, downloader, status, verified,
+                mbPerSec(), wallNanos / 1e6, ttfbNanos / 1e6, cpuNanos / 1e6, cpuLoad(),
+                peakHeapBytes, peakDirectBytes, requests, faults);
+    }
+}
@@ -0,0 +1,41 @@
+package org.example.e2e;
+
+import java.util.Random;
+
+/**
+ * Вміст файлу будь-якого розміру без зберігання в пам'яті:
+ * байт на позиції p — це p-й байт випадкового блоку простої довжини,
+ * тож однакові шматки не збігаються з межами сегментів і листків.
+ */
+public final class SyntheticContent {
+
+    private static final int BLOCK = 1_048_573;
+
+    private final byte[] block = new byte[BLOCK];
+    private final long size;
+    private final long seed;
+
+    public SyntheticContent(long size, long seed) {
+        this.size = size;
+        this.seed = seed;
+        new Random(seed).nextBytes(block);
+    }
+
+    public long size() { return size; }
+
+    public String etag() {
+        return "\"" + Long.toHexString(seed) + "-" + Long.toHexString(size) + "\"";
+    }
+
+    /** Заповнює {@code dst[off, off+len)} байтами з позиції {@code pos}. */
+    public void fill(long pos, byte[] dst, int off, int len) {
+        int at = (int) (pos % BLOCK);
+        while (len > 0) {
+            int n = Math.min(len, BLOCK - at);
+            System.arraycopy(block, at, dst, off, n);
+            off += n;
+            len -= n;
+            at = 0;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package org.example.e2e;
+
+import org.example.core.AppSettings;
+import org.example.core.DownloadManager;
+import org.example.downloader.AbstractDownloader;
+import org.example.downloader.AsyncHttpDownloader;
+import org.example.downloader.HttpDownloader;
+import org.example.downloader.OutputMode;
+import org.example.model.DownloadStatus;
+import org.example.model.DownloadTask;
+import org.example.observer.DownloadObserver;
+import org.example.segment.SegmentManager;
+import org.example.speed.SpeedControl;
+import org.example.storage.SQLiteStorage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Наскрізний прогін DownloadManager + HttpDownloader проти RangeServer у тому ж процесі.
+ * Для кожного розміру, режиму запису і завантажувача міряє MB/s, час до першого байта,
+ * CPU клієнта (CPU процесу мінус потоки сервера) і пікову купу.
+ * Мережа не потрібна: усе йде через loopback.
+ *
+ * Параметри — {@code --ключ=значення}:
+ * sizes (64K,16M,1G), modes (STREAM,MAPPED), downloaders (sync,async),
+ * bandwidth (байт/с на з'єднання), latency (ms), errorRate, dropRate, stallRate,
+ * connections, timeout (с), warmup (прогонів 1 MiB, що не потрапляють у звіт), out (шлях до JSON).
+ * Код виходу 1, якщо хоч одне завантаження не завершилось або файл не збігся.
+ */
+public class ThroughputSuite {
+
+    private static final long SEED = 42;
+    private static final int VERIFY_CHUNK = 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = parseArgs(args);
+
+        List<Long> sizes = split(opts.getOrDefault("sizes", "64K,16M,256M")).stream()
+                .map(ThroughputSuite::parseSize).toList();
+        List<OutputMode> modes = split(opts.getOrDefault("modes", "STREAM,MAPPED")).stream()
+                .map(OutputMode::valueOf).toList();
+        List<String> downloaders = split(opts.getOrDefault("downloaders", "sync,async"));
+
+        RangeServer.Config config = new RangeServer.Config(
+                parseSize(opts.getOrDefault("bandwidth", "0")),
+                Long.parseLong(opts.getOrDefault("latency", "0")),
+                Double.parseDouble(opts.getOrDefault("errorRate", "0")),
+                Double.parseDouble(opts.getOrDefault("dropRate", "0")),
+                Double.parseDouble(opts.getOrDefault("stallRate", "0"))
+        );
+        int connections = Integer.parseInt(opts.getOrDefault("connections", "8"));
+        long timeoutSec = Long.parseLong(opts.getOrDefault("timeout", "600"));
+        int warmup = Integer.parseInt(opts.getOrDefault("warmup", "2"));
+
+        List<RunResult> results = new ArrayList<>();
+
+        try (RangeServer server = new RangeServer()) {
+            // перші прогони платять за JIT і завантаження класів
+            SyntheticContent small = new SyntheticContent(1024 * 1024, SEED);
+            server.serve(small, RangeServer.Config.unlimited());
+            for (int i = 0; i < warmup; i++) {
+                for (String downloader : downloaders) {
+                    run(server, small, modes.get(0), downloader, connections, timeoutSec);
+                }
+            }
+
+            for (long size : sizes) {
+                SyntheticContent content = new SyntheticContent(size, SEED);
+                server.serve(content, config);
+
+                for (OutputMode mode : modes) {
+                    for (String downloader : downloaders) {
+                        RunResult r = run(server, content, mode, downloader, connections, timeoutSec);
+                        results.add(r);
+                        printRow(r);
+                    }
+                }
+            }
+        }
+
+        String out = opts.get("out");
+        if (out != null) writeJson(Path.of(out), config, results);
+
+        boolean allOk = results.stream().allMatch(RunResult::ok);
+        System.exit(allOk ? 0 : 1);
+    }
+
+    // ===== Один прогін =====
+
+    private static RunResult run(RangeServer server,
+                                 SyntheticContent content,
+                                 OutputMode mode,
+                                 String downloaderName,
+                                 int connections,
+                                 long timeoutSec) throws Exception {
+
+        Path dir = Files.createTempDirectory("e2e-run");
+        try {
+            AppSettings settings = new AppSettings();
+            settings.setDownloadDir(dir);
+            settings.setIncompleteDir(dir);
+            settings.setOutputMode(mode);
+            settings.setMaxConnectionsPerDownload(connections);
+
+            AbstractDownloader downloader = "async".equals(downloaderName)
+                    ? new AsyncHttpDownloader()
+                    : new HttpDownloader();
+
+            DownloadManager manager = new DownloadManager(
+                    new SQLiteStorage(dir.resolve("e2e.db").toString()),
+                    downloader,
+                    new SpeedControl(0),
+                    new SegmentManager(),
+                    settings
+            );
+
+            CountDownLatch finished = new CountDownLatch(1);
+            long[] finishedAt = new long[1];
+            manager.addObserver(new DownloadObserver() {
+                @Override
+                public void onTaskChanged(DownloadTask t) {
+                    if (t.getStatus() == DownloadStatus.COMPLETED || t.getStatus() == DownloadStatus.FAILED) {
+                        finishedAt[0] = System.nanoTime();
+                        finished.countDown();
+                    }
+                }
+
+                @Override
+                public void onLog(String msg) {
+                    System.err.println("  " + msg);
+                }
+            });
+
+            Path target = dir.resolve("file.bin");
+            DownloadTask task = manager.addDownload(server.url(), target.toString());
+
+            System.gc();
+            List<MemoryPoolMXBean> heap = heapPools();
+            heap.forEach(MemoryPoolMXBean::resetPeakUsage);
+            BufferPoolMXBean direct = directPool();
+
+            long requestsBefore = server.getRequests();
+            long faultsBefore = server.getFaults();
+            long serverCpuBefore = server.getCpuNanos();
+            long cpuBefore = processCpuNanos();
+            long started = System.nanoTime();
+
+            manager.start(task.getId());
+
+            // час до першого байта і пік direct-пам'яті знімаємо опитуванням раз на мілісекунду
+            long ttfb = -1;
+            long peakDirect = 0;
+            long deadline = started + TimeUnit.SECONDS.toNanos(timeoutSec);
+            while (finished.getCount() > 0 && System.nanoTime() < deadline) {
+                if (ttfb < 0 && task.getDownloadedBytes() > 0) ttfb = System.nanoTime() - started;
+                if (direct != null) peakDirect = Math.max(peakDirect, direct.getMemoryUsed());
+                LockSupport.parkNanos(1_000_000);
+            }
+
+            long wall = (finished.getCount() == 0 ? finishedAt[0] : System.nanoTime()) - started;
+            if (ttfb < 0 && task.getDownloadedBytes() > 0) ttfb = wall;
+            long cpu = (processCpuNanos() - cpuBefore) - (server.getCpuNanos() - serverCpuBefore);
+            long peakHeap = heap.stream().mapToLong(p -> p.getPeakUsage().getUsed()).sum();
+
+            if (finished.getCount() > 0) manager.stop(task.getId());
+            manager.shutdown();
+
+            String status = finished.getCount() > 0 ? "TIMEOUT" : task.getStatus().name();
+            boolean verified = task.getStatus() == DownloadStatus.COMPLETED && verify(target, content);
+
+            return new RunResult(content.size(), mode.name(), downloaderName, status, verified,
+                    wall, Math.max(0, ttfb), Math.max(0, cpu), peakHeap, peakDirect,
+                    server.getRequests() - requestsBefore, server.getFaults() - faultsBefore);
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    // файл порівнюємо з генератором шматками, щоб не тримати гігабайти в пам'яті
+    private static boolean verify(Path file, SyntheticContent content) throws IOException {
+        if (Files.size(file) != content.size()) return false;
+
+        byte[] expected = new byte[VERIFY_CHUNK];
+        byte[] actual = new byte[VERIFY_CHUNK];
+        try (InputStream in = Files.newInputStream(file)) {
+            long pos = 0;
+            while (pos < content.size()) {
+                int n = in.readNBytes(actual, 0, VERIFY_CHUNK);
+                if (n <= 0) return false;
+                content.fill(pos, expected, 0, n);
+                if (!Arrays.equals(expected, 0, n, actual, 0, n)) return false;
+                pos += n;
+            }
+        }
+        return true;
+    }
+
+    // ===== Виміри JVM =====
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(p -> p.getType() == MemoryType.HEAP)
+                .toList();
+    }
+
+    private static BufferPoolMXBean directPool() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(p -> p.getName().equals("direct"))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static long processCpuNanos() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    // ===== Звіт =====
+
+    private static void printRow(RunResult r) {
+        System.out.printf(Locale.ROOT,
+                "%-8s %-7s %-6s %-10s %8.1f MB/s  ttfb %7.1f ms  cpu %5.2f  heap %6.1f MiB  direct %6.1f MiB  req %4d  faults %3d%s%n",
+                formatSize(r.size()), r.mode(), r.downloader(), r.status(),
+                r.mbPerSec(), r.ttfbNanos() / 1e6, r.cpuLoad(),
+                r.peakHeapBytes() / 1048576.0, r.peakDirectBytes() / 1048576.0,
+                r.requests(), r.faults(),
+                r.ok() ? "" : "  <-- FAILED");
+    }
+
+    private static void writeJson(Path out, RangeServer.Config config, List<RunResult> results) throws IOException {
+        if (out.getParent() != null) Files.createDirectories(out.getParent());
+
+        String runs = results.stream().map(RunResult::toJson).collect(Collectors.joining(",\n    "));
+        String json = String.format(Locale.ROOT,
+                "{%n  \"java\": \"%s\",%n  \"cpus\": %d,%n"
+                        + "  \"server\": {\"bandwidth\":%d,\"latencyMs\":%d,\"errorRate\":%s,\"dropRate\":%s,\"stallRate\":%s},%n"
+                        + "  \"runs\": [%n    %s%n  ]%n}%n",
+                System.getProperty("java.version"),
+                Runtime.getRuntime().availableProcessors(),
+                config.bytesPerSecPerConnection(), config.latencyMs(), config.errorRate(), config.dropRate(),
+                config.stallRate(),
+                runs);
+        Files.writeString(out, json);
+    }
+
+    // ===== Аргументи =====
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> opts = new LinkedHashMap<>();
+        for (String a : args) {
+            if (!a.startsWith("--") || a.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Expected --key=value, got: " + a);
+            }
+            int eq = a.indexOf('=');
+            opts.put(a.substring(2, eq), a.substring(eq + 1));
+        }
+        return opts;
+    }
+
+    private static List<String> split(String csv) {
+        return Arrays.stream(csv.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+    }
+
+    // 64K, 16M, 2G або просто байти
+    static long parseSize(String s) {
+        s = s.trim().toUpperCase(Locale.ROOT);
+        long mul = switch (s.isEmpty() ? ' ' : s.charAt(s.length() - 1)) {
+            case 'K' -> 1024L;
+            case 'M' -> 1024L * 1024;
+            case 'G' -> 1024L * 1024 * 1024;
+            default -> 1;
+        };
+        if (mul > 1) s = s.substring(0, s.length() - 1);
+        return Long.parseLong(s) * mul;
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes >= 1L << 30 && bytes % (1L << 30) == 0) return (bytes >> 30) + "G";
+        if (bytes >= 1L << 20 && bytes % (1L << 20) == 0) return (bytes >> 20) + "M";
+        if (bytes >= 1L << 10 && bytes % (1L << 10) == 0) return (bytes >> 10) + "K";
+        return Long.toString(bytes);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+}
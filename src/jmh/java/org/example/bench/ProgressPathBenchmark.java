@@ -0,0 +1,142 @@
+package org.example.bench;
+
+import org.example.core.AppSettings;
+import org.example.core.DownloadControl;
+import org.example.core.DownloadManager;
+import org.example.digest.ContentDigest;
+import org.example.downloader.AbstractDownloader;
+import org.example.downloader.RemoteMetadata;
+import org.example.model.DownloadSegment;
+import org.example.model.DownloadTask;
+import org.example.segment.Peer;
+import org.example.segment.SegmentManager;
+import org.example.speed.SpeedControl;
+import org.example.storage.SQLiteStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Шлях onSegmentProgress, яким кожен записаний шматок повідомляє DownloadManager:
+ * сума по сегментах, журнал прогресу і публікатор знімків для UI.
+ * Задача запускається через звичайну чергу менеджера, а завантажувач-заглушка
+ * лише віддає колбеки бенчмарку і чекає на скасування.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgressPathBenchmark {
+
+    private static final long TOTAL = 1L << 30;
+    private static final int CHUNK = 64 * 1024;
+
+    private Path dir;
+    private DownloadManager manager;
+    private DownloadTask task;
+    private Started started;
+
+    private final AtomicInteger threadIndex = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("bench-progress");
+
+        AppSettings settings = new AppSettings();
+        settings.setDownloadDir(dir);
+        settings.setIncompleteDir(dir);
+        settings.setMaxConnectionsPerDownload(8);
+
+        CapturingDownloader downloader = new CapturingDownloader();
+        manager = new DownloadManager(
+                new SQLiteStorage(dir.resolve("bench.db").toString()),
+                downloader,
+                new SpeedControl(0),
+                new SegmentManager(),
+                settings
+        );
+
+        task = manager.addDownload("http://example.com/big.bin", dir.resolve("big.bin").toString());
+        manager.start(task.getId());
+        started = downloader.started.get(10, TimeUnit.SECONDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        manager.stop(task.getId());
+        manager.shutdown();
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    /** Кожен потік бенчмарку — окремий сегмент, як воркери HttpDownloader. */
+    @State(Scope.Thread)
+    public static class Worker {
+        DownloadSegment segment;
+        long downloaded;
+
+        @Setup(Level.Trial)
+        public void setUp(ProgressPathBenchmark b) {
+            List<DownloadSegment> segs = b.started.segments();
+            segment = segs.get(b.threadIndex.getAndIncrement() % segs.size());
+        }
+
+        long next() {
+            downloaded = (downloaded + CHUNK) % segment.getLength();
+            return downloaded;
+        }
+    }
+
+    @Benchmark
+    public void singleSegment(Worker w) {
+        started.callbacks().onSegmentProgress(task.getId(), w.segment.getIndex(), w.next());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void allSegments(Worker w) {
+        started.callbacks().onSegmentProgress(task.getId(), w.segment.getIndex(), w.next());
+    }
+
+    record Started(List<DownloadSegment> segments, AbstractDownloader.DownloadCallbacks callbacks) {}
+
+    private static class CapturingDownloader extends AbstractDownloader {
+
+        final CompletableFuture<Started> started = new CompletableFuture<>();
+
+        @Override
+        public RemoteMetadata probe(String url) {
+            return new RemoteMetadata(url, 200, TOTAL, true, null, null, "", null);
+        }
+
+        @Override
+        protected void doDownload(DownloadTask task,
+                                  Path tmpFile,
+                                  List<DownloadSegment> segments,
+                                  ContentDigest digest,
+                                  List<Peer> peers,
+                                  SpeedControl speedControl,
+                                  DownloadControl control,
+                                  DownloadCallbacks callbacks) {
+            started.complete(new Started(segments, callbacks));
+
+            // тримаємо задачу активною, поки бенчмарк не зупинить її
+            while (!control.isCancelled()) {
+                LockSupport.parkNanos(10_000_000);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.example.bench;
+
+import org.example.speed.SpeedControl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Накладні витрати SpeedControl.throttle на кожен шматок
+ * і точність обмеження, коли чекати таки доводиться.
+ */
+@Fork(1)
+public class SpeedControlBenchmark {
+
+    private static final int CHUNK = 64 * 1024;
+    private static final String HOST = "example.com";
+
+    // ===== Накладні витрати =====
+
+    @State(Scope.Benchmark)
+    public static class Overhead {
+        // 0 — без обмежень; інакше ліміт такий високий, що чекати не доводиться
+        @Param({"0", "1099511627776"})
+        public long limit;
+
+        SpeedControl global;
+        SpeedControl allLevels;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            global = new SpeedControl(limit);
+
+            allLevels = new SpeedControl(limit);
+            allLevels.setTaskLimit(1, limit);
+            allLevels.setHostLimit(HOST, limit);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void throttleGlobal(Overhead o) {
+        o.global.throttle(CHUNK);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void throttleAllLevels(Overhead o) {
+        o.allLevels.throttle(1, HOST, CHUNK);
+    }
+
+    // кілька сегментів однієї задачі ділять усі три бакети
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    @Threads(4)
+    public void throttleAllLevelsContended(Overhead o) {
+        o.allLevels.throttle(1, HOST, CHUNK);
+    }
+
+    // ===== Точність =====
+
+    /**
+     * 8 MiB при ліміті 8 MiB/s, 4 потоки по 64 KiB.
+     * Бакет стартує порожнім, тож ідеальний результат — 1000 ms;
+     * відхилення від нього і є похибкою обмеження.
+     */
+    @State(Scope.Benchmark)
+    public static class Limited {
+        static final long RATE = 8L * 1024 * 1024;
+        static final long TOTAL = RATE;
+
+        SpeedControl speed;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            speed = new SpeedControl(RATE);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 10)
+    public void accuracy(Limited l) throws InterruptedException {
+        int threads = 4;
+        long perThread = Limited.TOTAL / threads;
+
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = Thread.ofVirtual().start(() -> {
+                for (long done = 0; done < perThread; done += CHUNK) {
+                    l.speed.throttle(1, HOST, CHUNK);
+                }
+            });
+        }
+        for (Thread t : workers) t.join();
+    }
+}
@@ -0,0 +1,120 @@
+package org.example.bench;
+
+import org.example.model.DownloadSegment;
+import org.example.model.DownloadStatus;
+import org.example.model.DownloadTask;
+import org.example.model.SegmentStatus;
+import org.example.storage.SQLiteStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Гарячі запити SQLiteStorage на базі з історією завантажень реального розміру
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+
+    // скільки задач уже лежить у базі
+    @Param({"100", "5000"})
+    public int tasks;
+
+    @Param({"8"})
+    public int segmentsPerTask;
+
+    private static final long TASK_SIZE = 1L << 30;
+
+    private Path dir;
+    private SQLiteStorage storage;
+    private final List<DownloadTask> rows = new ArrayList<>();
+    private final List<List<DownloadSegment>> plans = new ArrayList<>();
+
+    private int next;
+    private long bytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("bench-storage");
+        storage = new SQLiteStorage(dir.resolve("bench.db").toString());
+        storage.init();
+
+        long part = TASK_SIZE / segmentsPerTask;
+        for (int i = 0; i < tasks; i++) {
+            DownloadTask t = storage.createTask("http://example.com/file" + i + ".bin", "file" + i + ".bin");
+            t.setStatus(DownloadStatus.RUNNING);
+            t.setTotalBytes(TASK_SIZE);
+            storage.updateTask(t);
+
+            List<DownloadSegment> plan = new ArrayList<>();
+            for (int s = 0; s < segmentsPerTask; s++) {
+                long start = s * part;
+                long end = (s == segmentsPerTask - 1) ? TASK_SIZE - 1 : start + part - 1;
+                DownloadSegment seg = new DownloadSegment(0, t.getId(), s, start, end);
+                seg.setStatus(SegmentStatus.RUNNING);
+                plan.add(seg);
+            }
+            storage.saveSegments(t.getId(), plan);
+
+            rows.add(t);
+            plans.add(plan);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storage.close();
+        try (var files = Files.list(dir)) {
+            for (Path p : files.toList()) Files.deleteIfExists(p);
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    // задачі беремо по колу, щоб не бити весь час в один і той самий рядок
+    private int nextTask() {
+        int i = next;
+        next = (i + 1) % tasks;
+        return i;
+    }
+
+    @Benchmark
+    public void updateSegment() {
+        List<DownloadSegment> plan = plans.get(nextTask());
+        DownloadSegment seg = plan.get((int) (bytes % segmentsPerTask));
+        seg.setDownloadedBytes(++bytes);
+        storage.updateSegment(seg);
+    }
+
+    @Benchmark
+    public void updateTask() {
+        DownloadTask t = rows.get(nextTask());
+        t.setDownloadedBytes(++bytes);
+        storage.updateTask(t);
+    }
+
+    @Benchmark
+    public List<DownloadSegment> loadSegments() {
+        return storage.loadSegments(rows.get(nextTask()).getId());
+    }
+
+    /** Те, що робить ProgressJournal на кожен flush: задача + усі сегменти однією транзакцією. */
+    @Benchmark
+    public void saveProgress() {
+        int i = nextTask();
+        DownloadTask t = rows.get(i);
+        List<DownloadSegment> plan = plans.get(i);
+
+        bytes++;
+        for (DownloadSegment seg : plan) seg.setDownloadedBytes(bytes);
+        t.setDownloadedBytes(bytes * segmentsPerTask);
+        storage.saveProgress(t, plan, Map.of());
+    }
+}
@@ -0,0 +1,124 @@
+package org.example.downloader;
+
+import org.example.core.DownloadControl;
+import org.example.digest.ContentDigest;
+import org.example.digest.LeafHasher;
+import org.example.model.DownloadSegment;
+import org.example.model.DownloadTask;
+import org.example.speed.SpeedControl;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Цикл читання/запису сегмента з HttpDownloader без мережі: викликається сам
+ * {@link HttpDownloader#copySegment}, а тіло відповіді — {@link BodyChannel}, який
+ * наповнює {@link MemoryBody}. Решта — ті самі кроки (буфер writer'а, commit під
+ * замком сегмента, хеш листків, throttle, колбек прогресу, перевірки паузи й гонки).
+ * Результат — час на весь файл, тож пропускна здатність = fileSize / час.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChunkLoopBenchmark {
+
+    @Param({"STREAM", "MAPPED"})
+    public OutputMode mode;
+
+    @Param({"true", "false"})
+    public boolean hashing;
+
+    @Param({"67108864"})
+    public long fileSize;
+
+    @Param({"4"})
+    public int segments;
+
+    private final byte[] source = new byte[1024 * 1024];
+    private final HttpDownloader downloader = new HttpDownloader();
+    private final DownloadTask task = new DownloadTask(1, "http://localhost/file", "bench-loop.bin");
+    private final SpeedControl speed = new SpeedControl(0);
+    private final DownloadControl control = new DownloadControl();
+    private final Progress progress = new Progress();
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        new Random(42).nextBytes(source);
+        file = Files.createTempFile("bench-loop", ".bin");
+    }
+
+    @Setup(Level.Invocation)
+    public void truncate() throws IOException {
+        Files.write(file, new byte[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long downloadFile() throws IOException, InterruptedException {
+        long part = fileSize / segments;
+        ContentDigest digest = new ContentDigest();
+        Endgame endgame = new Endgame(fileSize);
+
+        try (TaskOutput out = TaskOutput.open(file, mode, fileSize)) {
+            for (int s = 0; s < segments; s++) {
+                long start = s * part;
+                long end = (s == segments - 1) ? fileSize : start + part;
+                DownloadSegment seg = new DownloadSegment(s, task.getId(), s, start, end - 1);
+                downloadSegment(seg, endgame.track(seg), out, digest);
+            }
+        }
+        return progress.downloaded;
+    }
+
+    // те, що downloadSegment робить навколо циклу, коли відповідь уже прийшла
+    private void downloadSegment(DownloadSegment seg, Endgame.Track track, TaskOutput out, ContentDigest digest)
+            throws IOException, InterruptedException {
+        long from = seg.getStartByte();
+        LeafHasher hasher = hashing ? digest.hasherFor(seg.getIndex(), from, from, out.channel()) : null;
+
+        long position;
+        try (TaskOutput.SegmentWriter writer = out.writer();
+             BodyChannel src = MemoryBody.open(source, seg.getEndByte() + 1 - from)) {
+            track.attach(Endgame.PRIMARY, src);
+            position = downloader.copySegment(task, seg, track, Endgame.PRIMARY, src, writer, from, hasher,
+                    "localhost", System.nanoTime(), speed, control, progress);
+        }
+
+        if (position <= seg.getEndByte() || !track.win(Endgame.PRIMARY)) {
+            throw new IllegalStateException("segment " + seg.getIndex() + " stopped at " + position);
+        }
+        if (hasher != null) {
+            hasher.finish(fileSize);
+            digest.release(seg.getIndex());
+        }
+    }
+
+    // замість DownloadManager: лише запам'ятати значення, як це робить колбек
+    private static final class Progress implements AbstractDownloader.DownloadCallbacks {
+        long downloaded;
+
+        @Override
+        public void onSegmentProgress(long taskId, int segmentIndex, long segmentDownloadedBytes) {
+            downloaded = segmentDownloadedBytes;
+        }
+
+        @Override public void onSegmentsChanged(long taskId, List<DownloadSegment> segments) {}
+        @Override public void onContentLengthDiscovered(long taskId, long totalBytes) {}
+        @Override public void onLog(String msg) {}
+        @Override public void onCompleted(long taskId) {}
+        @Override public void onError(long taskId, Exception e) {}
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.downloader;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+/**
+ * Тіло відповіді з пам'яті для бенчмарків: подає в {@link BodyChannel} ті самі
+ * List&lt;ByteBuffer&gt;, що й HttpClient, — heap-буфери по {@link #CHUNK} байт,
+ * по колу з одного масиву. Доставка синхронна, у потоці, що попросив дані.
+ */
+final class MemoryBody implements Flow.Subscription {
+
+    static final int CHUNK = 16 * 1024;
+
+    private final byte[] data;
+    private final BodyChannel body;
+    private long remaining;
+    private int pos;
+    private boolean done;
+
+    private MemoryBody(byte[] data, long length, BodyChannel body) {
+        this.data = data;
+        this.remaining = length;
+        this.body = body;
+    }
+
+    /** Канал, з якого читає цикл сегмента, з {@code length} байтами тіла. */
+    static BodyChannel open(byte[] data, long length) {
+        BodyChannel body = new BodyChannel();
+        body.onSubscribe(new MemoryBody(data, length, body));
+        return body;
+    }
+
+    @Override
+    public void request(long n) {
+        for (long i = 0; i < n && !done; i++) {
+            if (remaining <= 0) {
+                done = true;
+                body.onComplete();
+                return;
+            }
+            int len = (int) Math.min(Math.min(CHUNK, remaining), data.length - pos);
+            ByteBuffer b = ByteBuffer.wrap(data, pos, len);
+            pos = (pos + len) % data.length;
+            remaining -= len;
+            body.onNext(List.of(b));
+        }
+    }
+
+    @Override
+    public void cancel() {
+        done = true;
+    }
+}
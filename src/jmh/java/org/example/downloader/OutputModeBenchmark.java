@@ -0,0 +1,82 @@
+package org.example.downloader;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запис сегментованого файлу через STREAM (позиційні write) проти MAPPED (вікна MappedByteBuffer).
+ * Тіло йде тим самим шляхом, що й у HttpDownloader: буфери HttpClient через {@link BodyChannel}
+ * у буфер writer'а. Пакет — org.example.downloader, бо BodyChannel не публічний.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OutputModeBenchmark {
+
+    @Param({"STREAM", "MAPPED"})
+    public OutputMode mode;
+
+    @Param({"67108864"})
+    public long fileSize;
+
+    @Param({"4"})
+    public int segments;
+
+    private final byte[] source = new byte[1024 * 1024];
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        new Random(42).nextBytes(source);
+        file = Files.createTempFile("bench-output", ".bin");
+    }
+
+    @Setup(Level.Invocation)
+    public void truncate() throws IOException {
+        Files.write(file, new byte[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /** Сегменти пишуться по черзі шматками до {@link TaskOutput#BUFFER_SIZE}, як їх пише HttpDownloader. */
+    @Benchmark
+    public long writeFile() throws IOException {
+        long part = fileSize / segments;
+        long written = 0;
+
+        try (TaskOutput out = TaskOutput.open(file, mode, fileSize)) {
+            for (int s = 0; s < segments; s++) {
+                long start = s * part;
+                long end = (s == segments - 1) ? fileSize : start + part;
+
+                try (TaskOutput.SegmentWriter writer = out.writer();
+                     BodyChannel src = MemoryBody.open(source, end - start)) {
+                    long pos = start;
+                    while (pos < end) {
+                        int max = (int) Math.min(TaskOutput.BUFFER_SIZE, end - pos);
+                        ByteBuffer dst = writer.buffer(pos, max);
+                        int n = src.read(dst);
+                        if (n == -1) break;
+
+                        writer.commit(dst, pos, n);
+                        pos += n;
+                    }
+                }
+                written += end - start;
+            }
+        }
+        return written;
+    }
+}
@@ -41,7 +41,19 @@ public class DownloadController {
         manager.printSegments(taskId);
     }
 
+    public void addMirror(long taskId, String mirrorUrl) {
+        manager.addMirror(taskId, mirrorUrl);
+    }
+
+    public void setExpectedDigest(long taskId, String hex) {
+        manager.setExpectedDigest(taskId, hex);
+    }
+
     public void setSpeedLimit(long bytesPerSec) {
         manager.setSpeedLimitBytesPerSec(bytesPerSec);
     }
+
+    public void setTaskSpeedLimit(long taskId, long bytesPerSec) {
+        manager.setTaskSpeedLimit(taskId, bytesPerSec);
+    }
 }
@@ -1,5 +1,9 @@
 package org.example.core;
 
+import org.example.downloader.FileAllocation;
+import org.example.downloader.OutputMode;
+
+import java.net.http.HttpClient;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -9,6 +13,22 @@ public class AppSettings {
 
     private static final String KEY_DOWNLOAD_DIR = "downloadDir";
     private static final String KEY_INCOMPLETE_DIR = "incompleteDir";
+    private static final String KEY_FLUSH_INTERVAL_MS = "progressFlushIntervalMs";
+    private static final String KEY_FLUSH_BYTES = "progressFlushBytes";
+    private static final String KEY_MAX_ACTIVE = "maxActiveDownloads";
+    private static final String KEY_MIN_SEGMENT = "minSegmentSize";
+    private static final String KEY_MAX_SEGMENT = "maxSegmentSize";
+    private static final String KEY_MAX_CONNECTIONS = "maxConnectionsPerDownload";
+    private static final String KEY_OUTPUT_MODE = "outputMode";
+    private static final String KEY_FILE_ALLOCATION = "fileAllocation";
+    private static final String KEY_PROGRESS_HZ = "progressPublishHz";
+    private static final String KEY_HTTP_VERSION = "httpVersion";
+    private static final String KEY_CONNECT_TIMEOUT_MS = "connectTimeoutMs";
+    private static final String KEY_MAX_PER_HOST = "maxConnectionsPerHost";
+    private static final String KEY_ASYNC_DOWNLOADER = "asyncDownloader";
+    private static final String KEY_BUFFER_POOL_BYTES = "bufferPoolBytes";
+    private static final String KEY_SEGMENT_RETRIES = "segmentRetries";
+    private static final String KEY_RETRY_BASE_DELAY_MS = "retryBaseDelayMs";
 
     private final Preferences prefs =
             Preferences.userNodeForPackage(AppSettings.class);
@@ -16,6 +36,43 @@ public class AppSettings {
     private Path downloadDir;
     private Path incompleteDir;
 
+    // write-behind журнал прогресу: як часто скидати його у сховище
+    private long progressFlushIntervalMs = 1000;
+    private long progressFlushBytes = 4L * 1024 * 1024;
+
+    // скільки задач з черги можуть качатися одночасно
+    private int maxActiveDownloads = 3;
+
+    // планування сегментів за розміром файлу
+    private long minSegmentSize = 1024L * 1024;
+    private long maxSegmentSize = 64L * 1024 * 1024;
+    private int maxConnectionsPerDownload = 8;
+
+    // як сегменти пишуть у тимчасовий файл
+    private OutputMode outputMode = OutputMode.STREAM;
+    // як заздалегідь виділяти місце під тимчасовий файл; FULL — бо лише нулі змушують
+    // ext4/xfs справді виділити блоки, а TRUNCATE дає розріджений файл
+    private FileAllocation fileAllocation = FileAllocation.FULL;
+
+    // скільки разів на секунду спостерігачі отримують знімки прогресу
+    private double progressPublishHz = 10;
+
+    // HTTP-транспорт: бажаний протокол, таймаут з'єднання, ліміт HTTP/1.1-з'єднань на хост
+    private HttpClient.Version httpVersion = HttpClient.Version.HTTP_2;
+    private long connectTimeoutMs = 10_000;
+    private int maxConnectionsPerHost = 6;
+
+    // сегменти через sendAsync без потоку на сегмент (AsyncHttpDownloader);
+    // хеджування повільних сегментів у ньому немає
+    private boolean asyncDownloader = false;
+
+    // стеля пам'яті під буфери запису всіх завантажень разом
+    private long bufferPoolBytes = 16L * 1024 * 1024;
+
+    // збоїв поспіль, які сегмент переживає до того, як задача впаде; затримка росте вдвічі
+    private int segmentRetries = 5;
+    private long retryBaseDelayMs = 500;
+
     public AppSettings() {
         Path home = Paths.get(System.getProperty("user.home"));
         this.downloadDir = home.resolve("Downloads");
@@ -36,6 +93,44 @@ public class AppSettings {
             s.incompleteDir = Paths.get(inc);
         }
 
+        s.progressFlushIntervalMs =
+                s.prefs.getLong(KEY_FLUSH_INTERVAL_MS, s.progressFlushIntervalMs);
+        s.progressFlushBytes =
+                s.prefs.getLong(KEY_FLUSH_BYTES, s.progressFlushBytes);
+        s.maxActiveDownloads =
+                s.prefs.getInt(KEY_MAX_ACTIVE, s.maxActiveDownloads);
+        s.minSegmentSize =
+                s.prefs.getLong(KEY_MIN_SEGMENT, s.minSegmentSize);
+        s.maxSegmentSize =
+                s.prefs.getLong(KEY_MAX_SEGMENT, s.maxSegmentSize);
+        s.maxConnectionsPerDownload =
+                s.prefs.getInt(KEY_MAX_CONNECTIONS, s.maxConnectionsPerDownload);
+
+        s.progressPublishHz =
+                s.prefs.getDouble(KEY_PROGRESS_HZ, s.progressPublishHz);
+        s.connectTimeoutMs =
+                s.prefs.getLong(KEY_CONNECT_TIMEOUT_MS, s.connectTimeoutMs);
+        s.maxConnectionsPerHost =
+                s.prefs.getInt(KEY_MAX_PER_HOST, s.maxConnectionsPerHost);
+        s.asyncDownloader =
+                s.prefs.getBoolean(KEY_ASYNC_DOWNLOADER, s.asyncDownloader);
+        s.bufferPoolBytes =
+                s.prefs.getLong(KEY_BUFFER_POOL_BYTES, s.bufferPoolBytes);
+        s.segmentRetries =
+                s.prefs.getInt(KEY_SEGMENT_RETRIES, s.segmentRetries);
+        s.retryBaseDelayMs =
+                s.prefs.getLong(KEY_RETRY_BASE_DELAY_MS, s.retryBaseDelayMs);
+
+        try {
+            s.outputMode = OutputMode.valueOf(s.prefs.get(KEY_OUTPUT_MODE, s.outputMode.name()));
+        } catch (IllegalArgumentException ignored) {}
+        try {
+            s.fileAllocation = FileAllocation.valueOf(s.prefs.get(KEY_FILE_ALLOCATION, s.fileAllocation.name()));
+        } catch (IllegalArgumentException ignored) {}
+        try {
+            s.httpVersion = HttpClient.Version.valueOf(s.prefs.get(KEY_HTTP_VERSION, s.httpVersion.name()));
+        } catch (IllegalArgumentException ignored) {}
+
         s.ensureDirs();
         return s;
     }
@@ -43,6 +138,22 @@ public class AppSettings {
     public void save() {
         prefs.put(KEY_DOWNLOAD_DIR, downloadDir.toString());
         prefs.put(KEY_INCOMPLETE_DIR, incompleteDir.toString());
+        prefs.putLong(KEY_FLUSH_INTERVAL_MS, progressFlushIntervalMs);
+        prefs.putLong(KEY_FLUSH_BYTES, progressFlushBytes);
+        prefs.putInt(KEY_MAX_ACTIVE, maxActiveDownloads);
+        prefs.putLong(KEY_MIN_SEGMENT, minSegmentSize);
+        prefs.putLong(KEY_MAX_SEGMENT, maxSegmentSize);
+        prefs.putInt(KEY_MAX_CONNECTIONS, maxConnectionsPerDownload);
+        prefs.put(KEY_OUTPUT_MODE, outputMode.name());
+        prefs.put(KEY_FILE_ALLOCATION, fileAllocation.name());
+        prefs.putDouble(KEY_PROGRESS_HZ, progressPublishHz);
+        prefs.put(KEY_HTTP_VERSION, httpVersion.name());
+        prefs.putLong(KEY_CONNECT_TIMEOUT_MS, connectTimeoutMs);
+        prefs.putInt(KEY_MAX_PER_HOST, maxConnectionsPerHost);
+        prefs.putBoolean(KEY_ASYNC_DOWNLOADER, asyncDownloader);
+        prefs.putLong(KEY_BUFFER_POOL_BYTES, bufferPoolBytes);
+        prefs.putInt(KEY_SEGMENT_RETRIES, segmentRetries);
+        prefs.putLong(KEY_RETRY_BASE_DELAY_MS, retryBaseDelayMs);
     }
 
     private void ensureDirs() {
@@ -69,4 +180,132 @@ public class AppSettings {
         this.incompleteDir = incompleteDir;
         ensureDirs();
     }
+
+    public long getProgressFlushIntervalMs() {
+        return progressFlushIntervalMs;
+    }
+
+    public void setProgressFlushIntervalMs(long progressFlushIntervalMs) {
+        this.progressFlushIntervalMs = progressFlushIntervalMs;
+    }
+
+    public long getProgressFlushBytes() {
+        return progressFlushBytes;
+    }
+
+    public void setProgressFlushBytes(long progressFlushBytes) {
+        this.progressFlushBytes = progressFlushBytes;
+    }
+
+    public int getMaxActiveDownloads() {
+        return maxActiveDownloads;
+    }
+
+    public void setMaxActiveDownloads(int maxActiveDownloads) {
+        this.maxActiveDownloads = Math.max(1, maxActiveDownloads);
+    }
+
+    public long getMinSegmentSize() {
+        return minSegmentSize;
+    }
+
+    public void setMinSegmentSize(long minSegmentSize) {
+        this.minSegmentSize = minSegmentSize;
+    }
+
+    public long getMaxSegmentSize() {
+        return maxSegmentSize;
+    }
+
+    public void setMaxSegmentSize(long maxSegmentSize) {
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    public int getMaxConnectionsPerDownload() {
+        return maxConnectionsPerDownload;
+    }
+
+    public void setMaxConnectionsPerDownload(int maxConnectionsPerDownload) {
+        this.maxConnectionsPerDownload = Math.max(1, maxConnectionsPerDownload);
+    }
+
+    public OutputMode getOutputMode() {
+        return outputMode;
+    }
+
+    public void setOutputMode(OutputMode outputMode) {
+        this.outputMode = outputMode;
+    }
+
+    public FileAllocation getFileAllocation() {
+        return fileAllocation;
+    }
+
+    public void setFileAllocation(FileAllocation fileAllocation) {
+        this.fileAllocation = fileAllocation;
+    }
+
+    public double getProgressPublishHz() {
+        return progressPublishHz;
+    }
+
+    public void setProgressPublishHz(double progressPublishHz) {
+        this.progressPublishHz = progressPublishHz;
+    }
+
+    public HttpClient.Version getHttpVersion() {
+        return httpVersion;
+    }
+
+    public void setHttpVersion(HttpClient.Version httpVersion) {
+        this.httpVersion = httpVersion;
+    }
+
+    public long getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    public void setConnectTimeoutMs(long connectTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+    }
+
+    public boolean isAsyncDownloader() {
+        return asyncDownloader;
+    }
+
+    public void setAsyncDownloader(boolean asyncDownloader) {
+        this.asyncDownloader = asyncDownloader;
+    }
+
+    public long getBufferPoolBytes() {
+        return bufferPoolBytes;
+    }
+
+    public void setBufferPoolBytes(long bufferPoolBytes) {
+        this.bufferPoolBytes = bufferPoolBytes;
+    }
+
+    public int getSegmentRetries() {
+        return segmentRetries;
+    }
+
+    public void setSegmentRetries(int segmentRetries) {
+        this.segmentRetries = Math.max(0, segmentRetries);
+    }
+
+    public long getRetryBaseDelayMs() {
+        return retryBaseDelayMs;
+    }
+
+    public void setRetryBaseDelayMs(long retryBaseDelayMs) {
+        this.retryBaseDelayMs = Math.max(0, retryBaseDelayMs);
+    }
 }
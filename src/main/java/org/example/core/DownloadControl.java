@@ -1,35 +1,171 @@
 package org.example.core;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Пауза/скасування задачі без монітора.
+ * Стан — одне атомарне слово, тож перевірка на кожному шматку даних
+ * коштує одного volatile-читання. Потоки на паузі паркуються
+ * і будяться через unpark; при скасуванні закриваються зареєстровані
+ * потоки відповіді, щоб заблоковане читання з сокета завершилось одразу.
+ */
 public class DownloadControl {
 
-    private boolean paused = false;
-    private boolean cancelled = false;
+    private static final int PAUSED = 1;
+    private static final int CANCELLED = 2;
+
+    private final AtomicInteger state = new AtomicInteger();
+
+    private final Queue<Thread> waiters = new ConcurrentLinkedQueue<>();
+    // асинхронні "очікувачі": дії, які треба виконати при відновленні або скасуванні
+    private final Queue<Runnable> resumeActions = new ConcurrentLinkedQueue<>();
+    private final Set<Closeable> resources = ConcurrentHashMap.newKeySet();
 
-    public synchronized void pause() {
-        paused = true;
+    public void pause() {
+        state.getAndUpdate(s -> s | PAUSED);
+        // чекання обмеження швидкості пауза обриває одразу
+        unparkWaiters();
     }
 
-    public synchronized void resume() {
-        paused = false;
-        notifyAll();
+    public void resume() {
+        state.getAndUpdate(s -> s & ~PAUSED);
+        wakeAll();
     }
 
-    public synchronized void cancel() {
-        cancelled = true;
-        notifyAll();
+    public void cancel() {
+        state.getAndUpdate(s -> s | CANCELLED);
+        wakeAll();
+
+        for (Closeable c : resources) {
+            closeQuietly(c);
+        }
     }
 
-    public synchronized boolean isPaused() {
-        return paused;
+    public boolean isPaused() {
+        return (state.get() & PAUSED) != 0;
     }
 
-    public synchronized boolean isCancelled() {
-        return cancelled;
+    public boolean isCancelled() {
+        return (state.get() & CANCELLED) != 0;
     }
 
-    public synchronized void awaitResume() throws InterruptedException {
-        while (paused && !cancelled) {
-            wait();
+    /**
+     * Перевірка для циклу читання: одне читання стану, поки задача працює.
+     * На паузі чекає відновлення; повертає false, якщо задачу скасовано.
+     */
+    public boolean checkpoint() throws InterruptedException {
+        int s = state.get();
+        if (s == 0) return true;
+
+        if ((s & PAUSED) != 0) {
+            awaitResume();
         }
+        return !isCancelled();
+    }
+
+    /**
+     * Неблокуючий варіант {@link #awaitResume}: виконує дію, щойно задача
+     * не на паузі (одразу, якщо вона вже не на паузі, або після resume/cancel).
+     */
+    public void whenRunnable(Runnable action) {
+        resumeActions.add(action);
+        // стан читаємо після реєстрації, щоб не розминутися з resume()
+        if (state.get() != PAUSED) runResumeActions();
+    }
+
+    public void awaitResume() throws InterruptedException {
+        Thread current = Thread.currentThread();
+        waiters.add(current);
+        try {
+            // стан перевіряємо вже після реєстрації, щоб не пропустити unpark
+            while (state.get() == PAUSED) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+        } finally {
+            waiters.remove(current);
+        }
+    }
+
+    /**
+     * Затримка між спробами, яку скасування перериває одразу.
+     * Повертає false, якщо задачу скасовано.
+     */
+    public boolean sleep(long nanos) throws InterruptedException {
+        park(nanos, CANCELLED);
+        return !isCancelled();
+    }
+
+    /**
+     * Чекання, яке призначило обмеження швидкості. Його обриває і скасування, і пауза;
+     * обидва побачить наступний {@link #checkpoint()}. Борг лишається в бакетах,
+     * тож після відновлення його покриє вже час, проведений на паузі.
+     */
+    public void throttle(long nanos) throws InterruptedException {
+        if (nanos <= 0) return;
+        park(nanos, PAUSED | CANCELLED);
+    }
+
+    // чекає nanos або доки в стані не з'явиться один з бітів wakeOn
+    private void park(long nanos, int wakeOn) throws InterruptedException {
+        Thread current = Thread.currentThread();
+        waiters.add(current);
+        try {
+            long deadline = System.nanoTime() + nanos;
+            long left;
+            while ((state.get() & wakeOn) == 0 && (left = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, left);
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+        } finally {
+            waiters.remove(current);
+        }
+    }
+
+    /**
+     * Реєструє ресурс (зазвичай тіло відповіді), який треба закрити при скасуванні.
+     * Якщо задачу вже скасовано — ресурс закривається одразу.
+     */
+    public Registration closeOnCancel(Closeable resource) {
+        resources.add(resource);
+        if (isCancelled()) closeQuietly(resource);
+        return () -> resources.remove(resource);
+    }
+
+    private void wakeAll() {
+        unparkWaiters();
+        runResumeActions();
+    }
+
+    private void unparkWaiters() {
+        for (Thread t : waiters) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    private void runResumeActions() {
+        Runnable r;
+        while ((r = resumeActions.poll()) != null) {
+            r.run();
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
     }
 }
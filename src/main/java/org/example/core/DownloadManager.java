@@ -1,48 +1,107 @@
 package org.example.core;
 
+import org.example.digest.ContentDigest;
 import org.example.downloader.AbstractDownloader;
+import org.example.downloader.BufferPool;
+import org.example.downloader.FileAllocation;
+import org.example.downloader.RemoteMetadata;
+import org.example.downloader.RetryPolicy;
+import org.example.downloader.TransportConfig;
+import org.example.metrics.DownloadMetrics;
+import org.example.metrics.MeteredStorage;
 import org.example.model.*;
 import org.example.observer.DownloadObserver;
+import org.example.segment.HttpRangePeer;
 import org.example.segment.Peer;
 import org.example.segment.SegmentManager;
+import org.example.segment.SegmentPlanner;
 import org.example.speed.SpeedControl;
 import org.example.storage.LocalStorage;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class DownloadManager {
+public final class DownloadManager {
 
     private final LocalStorage storage;
     private final AbstractDownloader downloader;
     private final SpeedControl speedControl;
     private final SegmentManager segmentManager;
     private final AppSettings settings;
+    private final ProgressJournal journal;
+    private final ProgressPublisher publisher;
+    private final DownloadMetrics metrics;
 
-    private final Map<Long, DownloadTask> tasksCache = new HashMap<>();
-    private final Map<Long, DownloadControl> controls = new HashMap<>();
+    private final Map<Long, DownloadTask> tasksCache = new ConcurrentHashMap<>();
+    private final Map<Long, DownloadControl> controls = new ConcurrentHashMap<>();
 
     private final List<DownloadObserver> observers = new CopyOnWriteArrayList<>();
 
-    private Thread worker;
-    private volatile long currentTaskId = -1;
-
-    private List<Peer> peers = new ArrayList<>();
+    // ===== Scheduler =====
+    // черга: вищий пріоритет першим, серед рівних — FIFO за queueSeq
+    private final PriorityQueue<DownloadTask> queue = new PriorityQueue<>(
+            Comparator.comparingInt(DownloadTask::getPriority).reversed()
+                    .thenComparingLong(DownloadTask::getQueueSeq)
+    );
+    private final Map<Long, Thread> workers = new ConcurrentHashMap<>();
+    // воркери задач на паузі: живі, але слота не займають (під замком queue)
+    private final Set<Long> parked = new HashSet<>();
+    private long queueSeq = 0;
+    private int maxActive;
 
     public DownloadManager(LocalStorage storage,
                            AbstractDownloader downloader,
                            SpeedControl speedControl,
                            SegmentManager segmentManager,
                            AppSettings settings) {
-        this.storage = storage;
+        this.metrics = new DownloadMetrics(
+                this::getActiveCount,
+                this::getQueuedCount,
+                speedControl,
+                BufferPool.shared()
+        );
+
+        // усі записи, включно з журналом, проходять через заміри
+        this.storage = new MeteredStorage(storage, metrics.storage());
         this.downloader = downloader;
         this.speedControl = speedControl;
         this.segmentManager = segmentManager;
         this.settings = settings;
-        storage.init();
+        this.maxActive = settings.getMaxActiveDownloads();
+        this.storage.init();
+
+        BufferPool.shared().setCapacityBytes(settings.getBufferPoolBytes());
+
+        this.journal = new ProgressJournal(
+                this.storage,
+                settings.getProgressFlushIntervalMs(),
+                settings.getProgressFlushBytes()
+        );
+
+        this.publisher = new ProgressPublisher(
+                this::activeTasks,
+                observers,
+                settings.getProgressPublishHz()
+        );
+
+        observers.add(metrics);
+        metrics.register();
+    }
+
+    private Collection<DownloadTask> activeTasks() {
+        List<DownloadTask> list = new ArrayList<>();
+        for (Long id : workers.keySet()) {
+            DownloadTask t = tasksCache.get(id);
+            if (t != null) list.add(t);
+        }
+        return list;
     }
 
     public void addObserver(DownloadObserver o) {
@@ -54,6 +113,16 @@ public class DownloadManager {
         log("Speed limit set to " + bytesPerSec + " B/s");
     }
 
+    public void setTaskSpeedLimit(long taskId, long bytesPerSec) {
+        speedControl.setTaskLimit(taskId, bytesPerSec);
+        log("Task " + taskId + " speed limit set to " + bytesPerSec + " B/s");
+    }
+
+    public void setHostSpeedLimit(String host, long bytesPerSec) {
+        speedControl.setHostLimit(host, bytesPerSec);
+        log("Host " + host + " speed limit set to " + bytesPerSec + " B/s");
+    }
+
     private void notifyTaskChanged(DownloadTask t) {
         observers.forEach(o -> o.onTaskChanged(t));
     }
@@ -78,13 +147,190 @@ public class DownloadManager {
         return t;
     }
 
+    /** Очікуваний tree-sha256 (hex); null — не перевіряти. */
+    public void setExpectedDigest(long taskId, String hex) {
+        DownloadTask task = getTask(taskId).orElseThrow();
+        task.setExpectedDigest(hex == null ? null : hex.trim().toLowerCase(Locale.ROOT));
+        storage.updateTask(task);
+        log("Task " + taskId + ": expected digest " + task.getExpectedDigest());
+    }
+
+    public void setMirrors(long taskId, List<String> mirrorUrls) {
+        storage.saveMirrors(taskId, mirrorUrls);
+        log("Task " + taskId + ": " + mirrorUrls.size() + " mirror(s) configured");
+    }
+
+    public void addMirror(long taskId, String mirrorUrl) {
+        List<String> mirrors = new ArrayList<>(storage.loadMirrors(taskId));
+        if (mirrors.contains(mirrorUrl)) return;
+        mirrors.add(mirrorUrl);
+        setMirrors(taskId, mirrors);
+    }
+
+    public List<String> getMirrors(long taskId) {
+        return storage.loadMirrors(taskId);
+    }
+
+    private List<Peer> peersFor(DownloadTask task) {
+        List<Peer> list = new ArrayList<>();
+        list.add(new HttpRangePeer("origin", task.getUrl()));
+
+        int i = 1;
+        for (String url : storage.loadMirrors(task.getId())) {
+            if (url.equals(task.getUrl())) continue;
+            list.add(new HttpRangePeer("mirror-" + i++, url));
+        }
+        return list;
+    }
+
+    /** Ставить задачу в чергу з її поточним пріоритетом; стартує, щойно звільниться слот. */
     public void start(long taskId) {
+        DownloadTask task = getTask(taskId).orElseThrow();
+        enqueue(taskId, task.getPriority());
+    }
 
+    public void enqueue(long taskId, int priority) {
         DownloadTask task = getTask(taskId).orElseThrow();
-        currentTaskId = taskId;
 
-        DownloadControl control = new DownloadControl();
-        controls.put(taskId, control);
+        synchronized (queue) {
+            if (isRunning(taskId) || queue.contains(task)) return;
+
+            task.setPriority(priority);
+            task.setQueueSeq(++queueSeq);
+            task.setStatus(DownloadStatus.QUEUED);
+            storage.updateTask(task);
+            queue.add(task);
+        }
+
+        notifyTaskChanged(task);
+        dispatch();
+    }
+
+    public void setPriority(long taskId, int priority) {
+        DownloadTask task = getTask(taskId).orElseThrow();
+
+        synchronized (queue) {
+            boolean queued = queue.remove(task);
+            task.setPriority(priority);
+            storage.updateTask(task);
+            if (queued) queue.add(task);
+        }
+
+        notifyTaskChanged(task);
+    }
+
+    public void setMaxActiveDownloads(int max) {
+        synchronized (queue) {
+            maxActive = Math.max(1, max);
+        }
+        dispatch();
+    }
+
+    /** Піднімає збережену чергу після перезапуску програми. */
+    public void restoreQueue() {
+        // RUNNING у сховищі без воркера — задачу перервало закриття програми
+        // або збій; вона стає в чергу на своє місце і докачається з журналу
+        for (DownloadTask t : storage.loadTasksByStatus(EnumSet.of(DownloadStatus.RUNNING))) {
+            synchronized (queue) {
+                if (workers.containsKey(t.getId())) continue;
+            }
+            tasksCache.putIfAbsent(t.getId(), t);
+            updateStatus(t.getId(), DownloadStatus.QUEUED);
+        }
+
+        List<DownloadTask> queued = storage.loadQueuedTasks();
+
+        synchronized (queue) {
+            for (DownloadTask t : queued) {
+                DownloadTask cached = tasksCache.computeIfAbsent(t.getId(), id -> t);
+                if (isRunning(cached.getId()) || queue.contains(cached)) continue;
+                queue.add(cached);
+                queueSeq = Math.max(queueSeq, cached.getQueueSeq());
+            }
+        }
+
+        if (!queued.isEmpty()) log("Restored " + queued.size() + " queued download(s)");
+        dispatch();
+    }
+
+    public int getActiveCount() {
+        synchronized (queue) {
+            return workers.size() - parked.size();
+        }
+    }
+
+    // воркер є і не на паузі; викликати під замком queue
+    private boolean isRunning(long taskId) {
+        return workers.containsKey(taskId) && !parked.contains(taskId);
+    }
+
+    /** Заповненість спільного пулу буферів запису. */
+    public BufferPool getBufferPool() {
+        return BufferPool.shared();
+    }
+
+    public int getQueuedCount() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    private void dispatch() {
+        List<Thread> toLaunch = new ArrayList<>();
+        List<DownloadTask> toResume = new ArrayList<>();
+
+        synchronized (queue) {
+            int active = workers.size() - parked.size();
+            while (active < maxActive && !queue.isEmpty()) {
+                DownloadTask t = queue.poll();
+                active++;
+
+                // задача з паузи: її воркер ще живий, достатньо його розбудити
+                if (parked.remove(t.getId())) {
+                    toResume.add(t);
+                    continue;
+                }
+
+                DownloadControl control = new DownloadControl();
+                controls.put(t.getId(), control);
+
+                Thread worker = new Thread(() -> runTask(t, control), "download-" + t.getId());
+                worker.setDaemon(true);
+                workers.put(t.getId(), worker);
+                toLaunch.add(worker);
+            }
+        }
+
+        for (DownloadTask t : toResume) {
+            DownloadControl c = controls.get(t.getId());
+            if (c != null) c.resume();
+            updateStatus(t.getId(), DownloadStatus.RUNNING);
+        }
+        toLaunch.forEach(Thread::start);
+    }
+
+    private void runTask(DownloadTask task, DownloadControl control) {
+        try {
+            launch(task, control);
+        } catch (Exception e) {
+            task.setStatus(DownloadStatus.FAILED);
+            storage.updateTask(task);
+            notifyTaskChanged(task);
+            log("Task failed: " + e.getMessage());
+        } finally {
+            metrics.taskFinished(task.getId());
+            synchronized (queue) {
+                workers.remove(task.getId());
+                parked.remove(task.getId());
+            }
+            controls.remove(task.getId(), control);
+            dispatch();
+        }
+    }
+
+    private void launch(DownloadTask task, DownloadControl control) throws InsufficientSpaceException {
+
+        long taskId = task.getId();
 
         task.setStatus(DownloadStatus.RUNNING);
         storage.updateTask(task);
@@ -93,71 +339,161 @@ public class DownloadManager {
         // 1️⃣ Загружаем сегменты
         List<DownloadSegment> segmentsTmp = storage.loadSegments(taskId);
 
+        // дайджести листків має сенс піднімати лише разом зі збереженим планом
+        ContentDigest digest;
+
         if (segmentsTmp.isEmpty()) {
-            long total = downloader.probeContentLength(task.getUrl());
+            storage.clearLeafDigests(taskId);
+            digest = new ContentDigest();
+
+            // одна проба на все: розмір і підтримка Range (можливо, вже з кешу)
+            RemoteMetadata meta = downloader.probe(task.getUrl());
+            long total = meta.contentLength();
+            boolean ranges = total > 0 && meta.acceptsRanges();
 
             if (total > 0) {
                 task.setTotalBytes(total);
                 storage.updateTask(task);
+            }
 
-                segmentsTmp = createSegments(taskId, total, 4);
-                storage.saveSegments(taskId, segmentsTmp);
+            if (ranges) {
+                segmentsTmp = planSegments(task, total);
             } else {
+                // без Range або без розміру — потоковий режим, завжди з нуля
                 segmentsTmp = Collections.emptyList();
+                task.setDownloadedBytes(0);
+                log("Task " + taskId + ": no range support or unknown size, streaming in one connection");
             }
+        } else {
+            digest = new ContentDigest(storage.loadLeafDigests(taskId));
         }
 
         // 2️⃣ ФИКС: создаём final-переменную
-        final List<DownloadSegment> segments = segmentsTmp;
-
-        segmentManager.setSegments(segments);
-
+        // (copy-on-write: воркери додають сегменти при поділі, журнал і колбеки лише читають)
+        final List<DownloadSegment> segments = new CopyOnWriteArrayList<>(segmentsTmp);
 
         Path tmpFile = settings.getIncompleteDir()
                 .resolve(taskId + ".bin");
 
+        // 3️⃣ місце на диску перевіряємо до першого запиту за даними
+        checkFreeSpace(task, tmpFile, segments);
 
+        segmentManager.setSegments(segments);
+        journal.track(task, segments, digest);
+        metrics.taskStarted(task, segments);
+
+        downloader.setMaxConnections(settings.getMaxConnectionsPerDownload());
+        downloader.setOutputMode(settings.getOutputMode());
+        downloader.setFileAllocation(settings.getFileAllocation());
+        downloader.setTransport(new TransportConfig(
+                settings.getHttpVersion(),
+                Duration.ofMillis(settings.getConnectTimeoutMs()),
+                settings.getMaxConnectionsPerHost(),
+                null
+        ));
+        downloader.setRetryPolicy(new RetryPolicy(
+                settings.getSegmentRetries(),
+                Duration.ofMillis(settings.getRetryBaseDelayMs()),
+                RetryPolicy.DEFAULT_MAX_DELAY
+        ));
 
-        worker = new Thread(() -> downloader.download(
+        // виконується в потоці-воркері цієї задачі
+        downloader.download(
                 task,
+                tmpFile,
                 segments,
-                peers,
+                digest,
+                peersFor(task),
                 speedControl,
                 control,
-                new Callbacks(task, tmpFile)
-        ));
-
-        worker.setDaemon(true);
-        worker.start();
+                new Callbacks(task, segments, digest, tmpFile)
+        );
     }
 
 
+    /**
+     * Чи поміститься решта файлу. Потрібне місце — байти, яких ще немає: після TRUNCATE
+     * тимчасовий файл розріджений, і його розмір про зайняте місце нічого не каже.
+     * Свої блоки повністю займає лише файл, уже заповнений нулями (FULL).
+     * Без сегментів (потоковий режим) файл качається з нуля.
+     */
+    private void checkFreeSpace(DownloadTask task, Path tmpFile, List<DownloadSegment> segments)
+            throws InsufficientSpaceException {
+        long total = task.getTotalBytes();
+        if (total <= 0) return;
+
+        long needed = segments.isEmpty()
+                ? total
+                : segments.stream().mapToLong(DownloadSegment::getRemainingBytes).sum();
+        long available;
+        try {
+            // виділений заздалегідь файл уже тримає місце під залишок сегментів
+            if (!segments.isEmpty()
+                    && settings.getFileAllocation() == FileAllocation.FULL
+                    && Files.exists(tmpFile) && Files.size(tmpFile) >= total) {
+                return;
+            }
+            available = Files.getFileStore(settings.getIncompleteDir()).getUsableSpace();
+        } catch (IOException e) {
+            log("Free space check skipped: " + e.getMessage());
+            return;
+        }
+
+        if (needed > available) {
+            throw new InsufficientSpaceException(settings.getIncompleteDir(), needed, available);
+        }
+    }
+
+    /**
+     * Задача в черзі просто не запускається, поки її не відновлять.
+     * Воркер задачі, що вже качає, чекає на паузі, але слот звільняє:
+     * його одразу отримує наступна задача з черги.
+     */
     public void pause(long taskId) {
         DownloadControl c = controls.get(taskId);
         if (c != null) c.pause();
+
+        synchronized (queue) {
+            getTask(taskId).ifPresent(queue::remove);
+            if (workers.containsKey(taskId)) parked.add(taskId);
+        }
+
         updateStatus(taskId, DownloadStatus.PAUSED);
+        journal.flush(taskId);
+        dispatch();
     }
 
+    /**
+     * Відновлена задача стає в чергу, як і нова: воркер на паузі dispatch розбудить,
+     * щойно буде вільний слот, а без воркера (після перезапуску) — запустить новий.
+     */
     public void resume(long taskId) {
-
-        // 1. Если поток жив — просто resume
-        DownloadControl c = controls.get(taskId);
-        if (c != null) {
-            c.resume();
-            updateStatus(taskId, DownloadStatus.RUNNING);
-            return;
-        }
-
-        // 2. Если потока нет — это resume после перезапуска
         start(taskId);
     }
 
 
 
     public void stop(long taskId) {
+        boolean wasQueued;
+        synchronized (queue) {
+            wasQueued = getTask(taskId).map(queue::remove).orElse(false);
+        }
+
         DownloadControl c = controls.get(taskId);
         if (c != null) c.cancel();
         updateStatus(taskId, DownloadStatus.FAILED);
+        journal.finish(taskId);
+        speedControl.clearTask(taskId);
+
+        if (wasQueued) log("Task " + taskId + " removed from queue");
+    }
+
+    /** Скидає незбережений прогрес усіх задач; викликати при виході з програми. */
+    public void shutdown() {
+        publisher.close();
+        metrics.unregister();
+        journal.close();
+        storage.close();
     }
 
     public AbstractDownloader getDownloader() {
@@ -165,12 +501,9 @@ public class DownloadManager {
     }
 
     public List<DownloadTask> getUnfinishedTasks() {
-        return storage.loadAllTasks().stream()
-                .filter(t ->
-                        t.getStatus() == DownloadStatus.PAUSED ||
-                                t.getStatus() == DownloadStatus.RUNNING
-                )
-                .toList();
+        return storage.loadTasksByStatus(
+                EnumSet.of(DownloadStatus.QUEUED, DownloadStatus.PAUSED, DownloadStatus.RUNNING)
+        );
     }
 
 
@@ -192,55 +525,112 @@ public class DownloadManager {
     }
 
 
-    private List<DownloadSegment> createSegments(long taskId, long total, int count) {
-        List<DownloadSegment> list = new ArrayList<>();
-        long part = total / count;
-        long start = 0;
+    private List<DownloadSegment> planSegments(DownloadTask task, long total) {
+        List<DownloadSegment> plan = createPlanner().plan(task.getId(), total);
+        storage.saveSegments(task.getId(), plan);
+        log("Task " + task.getId() + ": " + plan.size() + " segment(s) for " + total + " bytes");
+        return plan;
+    }
 
-        for (int i = 0; i < count; i++) {
-            long end = (i == count - 1) ? total - 1 : start + part - 1;
-            list.add(new DownloadSegment(0, taskId, i, start, end));
-            start = end + 1;
-        }
-        return list;
+    private SegmentPlanner createPlanner() {
+        return new SegmentPlanner(
+                settings.getMinSegmentSize(),
+                settings.getMaxSegmentSize(),
+                settings.getMaxConnectionsPerDownload()
+        );
     }
 
     private class Callbacks implements AbstractDownloader.DownloadCallbacks {
 
         private final DownloadTask task;
+        private final List<DownloadSegment> segments;
+        private final ContentDigest digest;
         private final Path tmpFile;
 
-        Callbacks(DownloadTask task, Path tmpFile) {
+        // найбільший звітований прогрес кожного сегмента і їхня сума:
+        // основний запит і хедж звітують навперейми, тож прогрес лише росте
+        private final Map<Integer, AtomicLong> segmentMarks = new ConcurrentHashMap<>();
+        private final AtomicLong segmentsTotal = new AtomicLong();
+
+        Callbacks(DownloadTask task, List<DownloadSegment> segments, ContentDigest digest, Path tmpFile) {
             this.task = task;
+            this.segments = segments;
+            this.digest = digest;
             this.tmpFile = tmpFile;
+
+            // відновлені сегменти вже мають прогрес; нові (поділ, план після
+            // потокового запиту) стартують з нуля
+            for (DownloadSegment s : segments) {
+                segmentMarks.put(s.getIndex(), new AtomicLong(s.getDownloadedBytes()));
+                segmentsTotal.addAndGet(s.getDownloadedBytes());
+            }
         }
 
+        // сегменти звітують паралельно зі своїх потоків, тож без монітора:
+        // прогрес самого сегмента веде завантажувач, тут лише сума для задачі
         @Override
         public void onSegmentProgress(long taskId, int idx, long downloaded) {
 
-            List<DownloadSegment> segs = storage.loadSegments(taskId);
-
-            for (DownloadSegment s : segs) {
-                if (s.getIndex() == idx) {
-                    s.setDownloadedBytes(downloaded);
-                    storage.updateSegment(s);
+            // лише пам'ять; у сховище прогрес потрапить через журнал
+            if (segments.isEmpty()) {
+                // потоковий режим: сегментів немає, рахуємо напряму
+                task.setDownloadedBytes(downloaded);
+            } else {
+                AtomicLong mark = segmentMarks.computeIfAbsent(idx, k -> new AtomicLong());
+                long before = mark.getAndAccumulate(downloaded, Math::max);
+                if (downloaded > before) {
+                    long sum = segmentsTotal.addAndGet(downloaded - before);
+                    task.setDownloadedBytes(sum);
+                    // сусідній потік міг записати старішу суму після нашої — дописуємо свіжу
+                    for (long now; (now = segmentsTotal.get()) != sum; sum = now) {
+                        task.setDownloadedBytes(now);
+                    }
                 }
             }
 
-            long sum = segs.stream()
-                    .mapToLong(DownloadSegment::getDownloadedBytes)
-                    .sum();
+            journal.record(taskId);
+            publisher.markDirty(taskId);
+        }
+
 
-            task.setDownloadedBytes(sum);
+        @Override
+        public void onTotalBytesKnown(long taskId, long total) throws IOException {
+            // потік іде з нуля, тож потрібен увесь розмір
+            checkFreeSpace(task, tmpFile, List.of());
+        }
+
+        @Override
+        public void onContentLengthDiscovered(long taskId, long total) {
+            task.setTotalBytes(total);
             storage.updateTask(task);
-            notifyTaskChanged(task);
+
+            synchronized (segments) {
+                segments.addAll(planSegments(task, total));
+            }
         }
 
+        @Override
+        public void onSegmentsChanged(long taskId, List<DownloadSegment> segs) {
+            // увесь план однією транзакцією: урізаний сегмент + новий хвіст
+            storage.saveSegments(taskId, new ArrayList<>(segs));
+        }
 
         @Override public void onLog(String msg) { log(msg); }
 
+        @Override
+        public void onSegmentFirstByte(long taskId, int idx, long nanos) {
+            metrics.segmentFirstByte(taskId, idx, nanos);
+        }
+
+        @Override
+        public void onSegmentRetry(long taskId, int idx) {
+            metrics.segmentRetry(taskId);
+        }
+
         @Override
         public void onCompleted(long taskId) {
+            if (!verifyDigest(taskId)) return;
+
             try {
                 Files.move(
                         tmpFile,
@@ -252,17 +642,78 @@ public class DownloadManager {
             }
 
             task.setStatus(DownloadStatus.COMPLETED);
-            storage.updateTask(task);
+            journal.finish(taskId);
+            speedControl.clearTask(taskId);
             notifyTaskChanged(task);
         }
 
 
+        /**
+         * Звіряє tree-sha256 з очікуваним без повторного читання файлу:
+         * дайджести листків уже пораховані під час завантаження.
+         * При розбіжності дані відкидаються, наступний старт качає з нуля.
+         */
+        private boolean verifyDigest(long taskId) {
+            String expected = task.getExpectedDigest();
+            long total = task.getTotalBytes();
+            int missing = digest.missingLeaves(total);
+
+            // без очікуваного значення файл заради дайджесту не перечитуємо
+            if (expected == null && missing > 0) return true;
+
+            String actual;
+            try {
+                actual = ContentDigest.hex(digest.root(tmpFile, total));
+            } catch (IOException e) {
+                onError(taskId, e);
+                return false;
+            }
+
+            log("Task " + taskId + ": tree-sha256 " + actual
+                    + (missing > 0 ? " (" + missing + " leaf(s) read back from disk)" : ""));
+
+            if (expected == null || expected.equalsIgnoreCase(actual)) return true;
+
+            storage.saveSegments(taskId, List.of());
+            storage.clearLeafDigests(taskId);
+            task.setDownloadedBytes(0);
+            try {
+                Files.deleteIfExists(tmpFile);
+            } catch (IOException ignored) {}
+
+            onError(taskId, new IOException("Digest mismatch: expected " + expected + ", got " + actual));
+            return false;
+        }
+
         @Override
         public void onError(long taskId, Exception e) {
             task.setStatus(DownloadStatus.FAILED);
-            storage.updateTask(task);
+            journal.finish(taskId);
             notifyTaskChanged(task);
             log("Task failed: " + e.getMessage());
         }
     }
+
+    /** Решта файлу не поміститься в каталог незавершених завантажень. */
+    public static class InsufficientSpaceException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final long neededBytes;
+        private final long availableBytes;
+
+        InsufficientSpaceException(Path dir, long neededBytes, long availableBytes) {
+            super("Insufficient disk space in " + dir + ": need " + neededBytes
+                    + " bytes, available " + availableBytes);
+            this.neededBytes = neededBytes;
+            this.availableBytes = availableBytes;
+        }
+
+        public long getNeededBytes() {
+            return neededBytes;
+        }
+
+        public long getAvailableBytes() {
+            return availableBytes;
+        }
+    }
 }
@@ -0,0 +1,136 @@
+package org.example.core;
+
+import org.example.digest.ContentDigest;
+import org.example.model.DownloadSegment;
+import org.example.model.DownloadTask;
+import org.example.storage.LocalStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind журнал прогресу.
+ * Прогрес тримається в пам'яті (в об'єктах задачі та сегментів), а в сховище
+ * скидається пакетно: раз на інтервал часу або після заданої кількості байт.
+ */
+public final class ProgressJournal {
+
+    private final LocalStorage storage;
+    private final long flushBytes;
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService flusher =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "progress-journal");
+                t.setDaemon(true);
+                return t;
+            });
+
+    public ProgressJournal(LocalStorage storage, long flushIntervalMs, long flushBytes) {
+        this.storage = storage;
+        this.flushBytes = flushBytes;
+
+        long interval = Math.max(50, flushIntervalMs);
+        flusher.scheduleWithFixedDelay(this::flushAllQuietly,
+                interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public void track(DownloadTask task, List<DownloadSegment> segments, ContentDigest digest) {
+        entries.put(task.getId(), new Entry(task, segments, digest));
+    }
+
+    /**
+     * Позначає задачу як змінену. Викликається з потоків завантаження,
+     * тому сам запис у сховище робиться на потоці журналу.
+     */
+    public void record(long taskId) {
+        Entry e = entries.get(taskId);
+        if (e == null) return;
+
+        e.dirty = true;
+
+        long pending = e.task.getDownloadedBytes() - e.flushedBytes;
+        if (pending >= flushBytes && !e.flushQueued) {
+            e.flushQueued = true;
+            flusher.execute(() -> flush(taskId));
+        }
+    }
+
+    public synchronized void flush(long taskId) {
+        Entry e = entries.get(taskId);
+        if (e == null) return;
+
+        e.flushQueued = false;
+        e.dirty = false;
+
+        List<DownloadSegment> segs;
+        synchronized (e.segments) {
+            segs = new ArrayList<>(e.segments);
+        }
+
+        // листки, готові до цього моменту, йдуть у ту ж транзакцію, що й прогрес
+        Map<Integer, byte[]> leaves = e.digest.drainUnsaved();
+
+        long bytes = e.task.getDownloadedBytes();
+        try {
+            storage.saveProgress(e.task, segs, leaves);
+        } catch (RuntimeException ex) {
+            e.digest.requeue(leaves);
+            throw ex;
+        }
+        e.flushedBytes = bytes;
+    }
+
+    public void flushAll() {
+        for (Map.Entry<Long, Entry> e : entries.entrySet()) {
+            if (e.getValue().dirty) flush(e.getKey());
+        }
+    }
+
+    /** Скидає останній стан задачі і перестає її відстежувати. */
+    public void finish(long taskId) {
+        flush(taskId);
+        entries.remove(taskId);
+    }
+
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+        flushAll();
+    }
+
+    private void flushAllQuietly() {
+        try {
+            flushAll();
+        } catch (RuntimeException ignored) {
+            // наступний тік спробує ще раз
+        }
+    }
+
+    private static class Entry {
+        final DownloadTask task;
+        final List<DownloadSegment> segments;
+        final ContentDigest digest;
+
+        volatile boolean dirty;
+        volatile boolean flushQueued;
+        volatile long flushedBytes;
+
+        Entry(DownloadTask task, List<DownloadSegment> segments, ContentDigest digest) {
+            this.task = task;
+            this.segments = segments;
+            this.digest = digest;
+            this.flushedBytes = task.getDownloadedBytes();
+        }
+    }
+}
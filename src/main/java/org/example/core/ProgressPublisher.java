@@ -0,0 +1,89 @@
+package org.example.core;
+
+import org.example.model.DownloadTask;
+import org.example.model.TaskSnapshot;
+import org.example.observer.DownloadObserver;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Розсилає прогрес пачками із заданою частотою замість події на кожен шматок.
+ * Потоки завантаження лише позначають задачу зміненою; раз на тік спостерігачі
+ * отримують знімки всіх активних задач одним викликом.
+ */
+public class ProgressPublisher {
+
+    private final Supplier<Collection<DownloadTask>> activeTasks;
+    private final List<DownloadObserver> observers;
+
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    // для швидкості: байти і час попереднього знімка кожної задачі
+    private final Map<Long, long[]> last = new HashMap<>();
+
+    private final ScheduledExecutorService ticker =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "progress-publisher");
+                t.setDaemon(true);
+                return t;
+            });
+
+    public ProgressPublisher(Supplier<Collection<DownloadTask>> activeTasks,
+                             List<DownloadObserver> observers,
+                             double hz) {
+        this.activeTasks = activeTasks;
+        this.observers = observers;
+
+        long periodMs = Math.max(10, Math.round(1000.0 / Math.max(0.1, hz)));
+        ticker.scheduleAtFixedRate(this::tickQuietly, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void markDirty(long taskId) {
+        dirty.add(taskId);
+    }
+
+    private void tickQuietly() {
+        try {
+            tick();
+        } catch (RuntimeException ignored) {
+            // помилка одного спостерігача не повинна зупинити розсилку
+        }
+    }
+
+    private void tick() {
+        if (dirty.isEmpty()) return;
+        dirty.clear();
+
+        long now = System.nanoTime();
+        List<TaskSnapshot> snapshots = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+
+        for (DownloadTask t : activeTasks.get()) {
+            long bytes = t.getDownloadedBytes();
+            long[] prev = last.get(t.getId());
+
+            double rate = 0;
+            if (prev != null && now > prev[1] && bytes >= prev[0]) {
+                rate = (bytes - prev[0]) * 1_000_000_000.0 / (now - prev[1]);
+            }
+            last.put(t.getId(), new long[]{bytes, now});
+            seen.add(t.getId());
+
+            snapshots.add(TaskSnapshot.of(t, rate));
+        }
+        last.keySet().retainAll(seen);
+
+        if (snapshots.isEmpty()) return;
+
+        List<TaskSnapshot> view = List.copyOf(snapshots);
+        observers.forEach(o -> o.onProgress(view));
+    }
+
+    public void close() {
+        ticker.shutdownNow();
+    }
+}
@@ -0,0 +1,173 @@
+package org.example.digest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Деревоподібний SHA-256 вмісту файлу (tree-sha256).
+ * Файл ділиться на листки по {@link #LEAF_SIZE} байт за абсолютним зсувом; кожен листок
+ * хешує той воркер, що його качає, а корінь — SHA-256 від дайджестів листків по порядку.
+ * Результат не залежить від поділу на сегменти, тож очікуване значення можна
+ * порахувати заздалегідь з готового файлу ({@link #of}).
+ */
+public class ContentDigest {
+
+    public static final int LEAF_SIZE = 256 * 1024;
+
+    private final Map<Integer, byte[]> leaves = new ConcurrentHashMap<>();
+    // готові листки, яких ще немає у сховищі (забирає журнал прогресу)
+    private final Map<Integer, byte[]> unsaved = new ConcurrentHashMap<>();
+    // хешери незавершених сегментів: повтор з того ж зсуву продовжує старий стан
+    private final Map<Integer, LeafHasher> hashers = new ConcurrentHashMap<>();
+
+    public ContentDigest() {}
+
+    public ContentDigest(Map<Integer, byte[]> restored) {
+        leaves.putAll(restored);
+    }
+
+    /**
+     * Хешер для сегмента, що продовжує качати з {@code from}.
+     * Якщо зсув посеред листка, початок листка дочитується з диска (не більше одного
+     * листка), але лише коли цей початок належить самому сегменту; інакше листок
+     * пропускається і буде дочитаний у {@link #root}.
+     */
+    public LeafHasher hasherFor(int segIndex, long from, long segmentStart, FileChannel file) throws IOException {
+        LeafHasher h = hashers.get(segIndex);
+        if (h != null && h.position() == from) return h;
+
+        long leafStart = from - from % LEAF_SIZE;
+        h = new LeafHasher(this, leafStart, leafStart >= segmentStart);
+
+        if (from > leafStart && leafStart >= segmentStart) {
+            ByteBuffer prefix = ByteBuffer.allocate((int) (from - leafStart));
+            readFully(file, prefix, leafStart);
+            prefix.flip();
+            h.update(prefix, leafStart);
+        } else if (from > leafStart) {
+            h.skipTo(from);
+        }
+
+        hashers.put(segIndex, h);
+        return h;
+    }
+
+    public void release(int segIndex) {
+        hashers.remove(segIndex);
+    }
+
+    void complete(long leafStart, byte[] digest) {
+        int index = (int) (leafStart / LEAF_SIZE);
+        leaves.put(index, digest);
+        unsaved.put(index, digest);
+    }
+
+    /** Забирає листки, готові з минулого виклику; порожня мапа — нічого нового. */
+    public Map<Integer, byte[]> drainUnsaved() {
+        Map<Integer, byte[]> out = new HashMap<>();
+        for (Integer i : unsaved.keySet()) {
+            byte[] d = unsaved.remove(i);
+            if (d != null) out.put(i, d);
+        }
+        return out;
+    }
+
+    /** Повертає листки назад, якщо зберегти їх не вдалося. */
+    public void requeue(Map<Integer, byte[]> notSaved) {
+        notSaved.forEach(unsaved::putIfAbsent);
+    }
+
+    /** Потоковий режим завжди починає з нуля — старі листки вже не актуальні. */
+    public void reset() {
+        leaves.clear();
+        unsaved.clear();
+        hashers.clear();
+    }
+
+    public int missingLeaves(long total) {
+        int missing = 0;
+        for (int i = 0; i < leafCount(total); i++) {
+            if (!leaves.containsKey(i)) missing++;
+        }
+        return missing;
+    }
+
+    /**
+     * Корінь дерева: один прохід по дайджестах листків.
+     * Файл читається лише для листків, які не вдалося порахувати на льоту.
+     */
+    public byte[] root(Path file, long total) throws IOException {
+        MessageDigest md = sha256();
+        int count = leafCount(total);
+
+        FileChannel ch = null;
+        try {
+            for (int i = 0; i < count; i++) {
+                byte[] d = leaves.get(i);
+                if (d == null) {
+                    if (ch == null) ch = FileChannel.open(file, StandardOpenOption.READ);
+                    d = hashLeaf(ch, i, total);
+                    leaves.put(i, d);
+                }
+                md.update(d);
+            }
+        } finally {
+            if (ch != null) ch.close();
+        }
+        return md.digest();
+    }
+
+    /** tree-sha256 готового файлу — щоб заздалегідь отримати очікуване значення. */
+    public static byte[] of(Path file) throws IOException {
+        return new ContentDigest().root(file, Files.size(file));
+    }
+
+    public static String hex(byte[] digest) {
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    static int leafCount(long total) {
+        return (int) ((Math.max(0, total) + LEAF_SIZE - 1) / LEAF_SIZE);
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static byte[] hashLeaf(FileChannel ch, int index, long total) throws IOException {
+        long start = (long) index * LEAF_SIZE;
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min(LEAF_SIZE, total - start));
+        readFully(ch, buf, start);
+        buf.flip();
+
+        MessageDigest md = sha256();
+        md.update(buf);
+        return md.digest();
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, position);
+            if (n < 0) throw new IOException("Unexpected end of file at " + position);
+            position += n;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.digest;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/**
+ * Хешує послідовні байти одного сегмента і віддає готові листки в {@link ContentDigest}.
+ * Листок, який почався не в цьому сегменті (невирівняна межа), не рахується —
+ * його дочитає {@link ContentDigest#root}.
+ */
+public class LeafHasher {
+
+    private final ContentDigest owner;
+    private final MessageDigest md = ContentDigest.sha256();
+
+    private long leafStart;
+    private long position;
+    // поточний листок хешується з самого початку
+    private boolean valid;
+
+    LeafHasher(ContentDigest owner, long leafStart, boolean valid) {
+        this.owner = owner;
+        this.leafStart = leafStart;
+        this.position = leafStart;
+        this.valid = valid;
+    }
+
+    public long position() {
+        return position;
+    }
+
+    void skipTo(long to) {
+        position = to;
+    }
+
+    /** Байти з позиції {@code at}; буфер прочитується до кінця. */
+    public void update(ByteBuffer bytes, long at) {
+        if (at != position) {
+            // розрив послідовності: поточний листок уже не порахувати
+            md.reset();
+            leafStart = at - at % ContentDigest.LEAF_SIZE;
+            valid = at == leafStart;
+            position = at;
+        }
+
+        while (bytes.hasRemaining()) {
+            long leafEnd = leafStart + ContentDigest.LEAF_SIZE;
+            int chunk = (int) Math.min(bytes.remaining(), leafEnd - position);
+
+            if (valid) {
+                md.update(bytes.slice(bytes.position(), chunk));
+            }
+            bytes.position(bytes.position() + chunk);
+            position += chunk;
+
+            if (position == leafEnd) {
+                completeLeaf();
+            }
+        }
+    }
+
+    /** Останній (неповний) листок файлу закінчується на {@code total}. */
+    public void finish(long total) {
+        if (position == total && position > leafStart) {
+            completeLeaf();
+        }
+    }
+
+    private void completeLeaf() {
+        if (valid) {
+            owner.complete(leafStart, md.digest());
+        } else {
+            md.reset();
+        }
+        leafStart = position;
+        valid = true;
+    }
+}
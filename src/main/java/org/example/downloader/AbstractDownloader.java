@@ -1,18 +1,53 @@
 package org.example.downloader;
 
 import org.example.core.DownloadControl;
+import org.example.digest.ContentDigest;
 import org.example.model.DownloadSegment;
 import org.example.model.DownloadTask;
 import org.example.segment.Peer;
 import org.example.speed.SpeedControl;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 
 public abstract class AbstractDownloader {
 
+    // скільки сегментів однієї задачі можуть качатися одночасно
+    protected volatile int maxConnections = 8;
+
+    protected volatile OutputMode outputMode = OutputMode.STREAM;
+    protected volatile FileAllocation fileAllocation = FileAllocation.FULL;
+
+    protected volatile TransportConfig transport = TransportConfig.defaults();
+
+    protected volatile RetryPolicy retryPolicy = RetryPolicy.defaults();
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = Math.max(1, maxConnections);
+    }
+
+    public void setOutputMode(OutputMode outputMode) {
+        this.outputMode = outputMode;
+    }
+
+    public void setFileAllocation(FileAllocation fileAllocation) {
+        this.fileAllocation = fileAllocation;
+    }
+
+    public void setTransport(TransportConfig transport) {
+        this.transport = transport;
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
     public final void download(
             DownloadTask task,
+            Path tmpFile,
             List<DownloadSegment> segments,
+            ContentDigest digest,
             List<Peer> peers,
             SpeedControl speedControl,
             DownloadControl control,
@@ -21,15 +56,23 @@ public abstract class AbstractDownloader {
         try {
             prepare(task, segments);
             open(task);
-            doDownload(task, segments, peers, speedControl, control, callbacks);
+            doDownload(task, tmpFile, segments, digest, peers, speedControl, control, callbacks);
             finish(task);
         } catch (Exception e) {
             callbacks.onError(task.getId(), e);
         }
     }
 
+    public RemoteMetadata probe(String url) {
+        return RemoteMetadata.unknown(url);
+    }
+
     public long probeContentLength(String url) {
-        return -1L;
+        return probe(url).contentLength();
+    }
+
+    public boolean supportsRanges(String url) {
+        return probe(url).acceptsRanges();
     }
 
     protected void prepare(DownloadTask task, List<DownloadSegment> segments) {}
@@ -37,7 +80,9 @@ public abstract class AbstractDownloader {
 
     protected abstract void doDownload(
             DownloadTask task,
+            Path tmpFile,
             List<DownloadSegment> segments,
+            ContentDigest digest,
             List<Peer> peers,
             SpeedControl speedControl,
             DownloadControl control,
@@ -48,7 +93,17 @@ public abstract class AbstractDownloader {
 
     public interface DownloadCallbacks {
         void onSegmentProgress(long taskId, int segmentIndex, long segmentDownloadedBytes);
+        // план сегментів змінився (поділ); треба зберегти його атомарно
+        void onSegmentsChanged(long taskId, List<DownloadSegment> segments);
+        // потоковий режим дізнався розмір: менеджер планує і зберігає сегменти
+        // у тому ж списку, що був переданий у download
+        void onContentLengthDiscovered(long taskId, long totalBytes);
+        // потоковий режим дізнався розмір до запису: виняток зупиняє задачу
+        default void onTotalBytesKnown(long taskId, long totalBytes) throws IOException {}
         void onLog(String msg);
+        // для метрик: від запиту до першого байта тіла; повторна спроба сегмента після збою
+        default void onSegmentFirstByte(long taskId, int segmentIndex, long nanos) {}
+        default void onSegmentRetry(long taskId, int segmentIndex) {}
         void onCompleted(long taskId);
         void onError(long taskId, Exception e);
     }
@@ -0,0 +1,474 @@
+package org.example.downloader;
+
+import org.example.core.DownloadControl;
+import org.example.digest.ContentDigest;
+import org.example.digest.LeafHasher;
+import org.example.model.DownloadSegment;
+import org.example.model.DownloadTask;
+import org.example.model.SegmentStatus;
+import org.example.segment.HttpRangePeer;
+import org.example.segment.Peer;
+import org.example.segment.PeerScoreboard;
+import org.example.speed.SpeedControl;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Асинхронний варіант {@link HttpDownloader}: сегменти качаються через sendAsync,
+ * а тіло приймає {@link SegmentSubscriber}, який пише отримані від клієнта буфери
+ * прямо в канал задачі, без копії в byte[]. Потік на сегмент не тримається —
+ * тисячі сегментів обслуговують кілька потоків клієнта. Обмеження швидкості
+ * працює через попит: наступний request(1) відкладається, а не потік спить.
+ * Потоковий режим (без Range або розміру) лишається блокуючим — там одне з'єднання.
+ * <p>
+ * Endgame тут немає: повільний останній сегмент не дублюється запитом до іншого
+ * джерела; вільні з'єднання лише забирають його хвіст (stealTail), а збої
+ * обробляє {@link RetryPolicy}. Хеджування працює тільки в синхронному {@link HttpDownloader}.
+ */
+public class AsyncHttpDownloader extends HttpDownloader {
+
+    // відкладені запити наступної порції даних (обмеження швидкості)
+    private static final ScheduledExecutorService DEMAND_TIMER =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "download-demand");
+                t.setDaemon(true);
+                return t;
+            });
+
+    // чекання дозволу на з'єднання з хостом блокує, тому — у віртуальних потоках
+    private static final Executor PERMIT_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Override
+    protected void downloadSegments(DownloadTask task,
+                                    Path tmpFile,
+                                    List<DownloadSegment> segments,
+                                    ContentDigest digest,
+                                    List<Peer> peers,
+                                    SpeedControl speed,
+                                    DownloadControl control,
+                                    DownloadCallbacks cb) throws Exception {
+
+        PeerScoreboard board = new PeerScoreboard(
+                peers.isEmpty() ? List.of(new HttpRangePeer("origin", task.getUrl())) : peers
+        );
+
+        try (TaskOutput out = TaskOutput.open(tmpFile, outputMode, task.getTotalBytes())) {
+            out.preallocate(fileAllocation);
+
+            Run run = new Run(task, segments, digest, board, out, speed, control, cb);
+            for (DownloadSegment seg : segments) {
+                if (seg.getStatus() != SegmentStatus.COMPLETED) run.pending.add(seg);
+            }
+
+            // "смуга" — ланцюжок сегментів на одному з'єднанні; смуг стільки, скільки з'єднань
+            int lanes = Math.min(maxConnections, run.pending.size());
+            List<CompletableFuture<Void>> all = new ArrayList<>();
+            for (int i = 0; i < lanes; i++) {
+                all.add(run.lane().whenComplete((v, e) -> {
+                    if (e != null) run.fail(unwrap(e));
+                }));
+            }
+
+            try {
+                CompletableFuture.allOf(all.toArray(CompletableFuture[]::new))
+                        .handle((v, e) -> null)
+                        .get();
+            } catch (InterruptedException e) {
+                run.fail(e);
+                throw e;
+            }
+
+            Throwable error = run.error.get();
+            if (error instanceof Exception ex) throw ex;
+            if (error != null) throw new ExecutionException(error);
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    private static CompletableFuture<Void> done() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /** Стан одного виклику downloadSegments. */
+    private final class Run {
+
+        final DownloadTask task;
+        final List<DownloadSegment> segments;
+        final ContentDigest digest;
+        final PeerScoreboard board;
+        final TaskOutput out;
+        final SpeedControl speed;
+        final DownloadControl control;
+        final DownloadCallbacks cb;
+        final RetryPolicy retry = retryPolicy;
+
+        final Queue<DownloadSegment> pending = new ConcurrentLinkedQueue<>();
+        final Set<SegmentSubscriber> active = ConcurrentHashMap.newKeySet();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        Run(DownloadTask task, List<DownloadSegment> segments, ContentDigest digest, PeerScoreboard board,
+            TaskOutput out, SpeedControl speed, DownloadControl control, DownloadCallbacks cb) {
+            this.task = task;
+            this.segments = segments;
+            this.digest = digest;
+            this.board = board;
+            this.out = out;
+            this.speed = speed;
+            this.control = control;
+            this.cb = cb;
+        }
+
+        // наступний сегмент з черги, а коли черга порожня — хвіст найповільнішого
+        CompletableFuture<Void> lane() {
+            if (control.isCancelled() || error.get() != null) return done();
+
+            DownloadSegment seg = pending.poll();
+            if (seg == null) seg = stealTail(task, segments, cb);
+            if (seg == null) return done();
+
+            return runSegment(seg, board.pick(null), 0).thenCompose(v -> lane());
+        }
+
+        // як у HttpDownloader: після паузи за RetryPolicy сегмент продовжується з поточного зсуву
+        CompletableFuture<Void> runSegment(DownloadSegment seg, Peer peer, int failures) {
+            long before = seg.getDownloadedBytes();
+            long started = System.nanoTime();
+
+            return fetch(seg, peer.getBaseUrl())
+                    .handle((v, e) -> {
+                        if (e == null) {
+                            board.recordSuccess(peer, seg.getDownloadedBytes() - before, System.nanoTime() - started);
+                            // пауза відпустила з'єднання; після resume — новий запит з поточного зсуву
+                            if (seg.getStatus() == SegmentStatus.PAUSED
+                                    && !control.isCancelled() && error.get() == null) {
+                                return resumed().thenCompose(x -> runSegment(seg, peer, failures));
+                            }
+                            return done();
+                        }
+
+                        Throwable cause = unwrap(e);
+                        board.recordFailure(peer);
+                        if (control.isCancelled() || error.get() != null) {
+                            return CompletableFuture.<Void>failedFuture(cause);
+                        }
+
+                        // спроба щось докачала — рахуємо збої заново
+                        int streak = seg.getDownloadedBytes() > before ? 1 : failures + 1;
+
+                        Peer next = board.pick(peer);
+                        if (streak > retry.retries() || !RetryPolicy.worthRetrying(cause, next != peer)) {
+                            return CompletableFuture.<Void>failedFuture(cause);
+                        }
+
+                        long delay = retry.delayNanos(streak);
+                        cb.onLog("Task " + task.getId() + ": segment " + seg.getIndex()
+                                + " failed on " + peer.getId() + " (" + cause.getMessage() + "), retry "
+                                + streak + "/" + retry.retries() + " on " + next.getId()
+                                + " in " + delay / 1_000_000 + " ms");
+                        cb.onSegmentRetry(task.getId(), seg.getIndex());
+
+                        return backoff(delay).thenCompose(x -> runSegment(seg, next, streak));
+                    })
+                    .thenCompose(f -> f);
+        }
+
+        // пауза між спробами без потоку; скасування задачі її перериває
+        CompletableFuture<Void> backoff(long nanos) {
+            CompletableFuture<Void> wake = new CompletableFuture<>();
+            DEMAND_TIMER.schedule(() -> wake.complete(null), nanos, TimeUnit.NANOSECONDS);
+
+            DownloadControl.Registration registration = control.closeOnCancel(() -> wake.complete(null));
+            return wake.whenComplete((v, e) -> registration.close());
+        }
+
+        // відновлення або скасування задачі, без потоку, що чекав би на нього
+        CompletableFuture<Void> resumed() {
+            CompletableFuture<Void> wake = new CompletableFuture<>();
+            control.whenRunnable(() -> wake.complete(null));
+            return wake;
+        }
+
+        CompletableFuture<Void> fetch(DownloadSegment seg, String url) {
+            if (control.isCancelled()) return done();
+
+            long from = seg.getStartByte() + seg.getDownloadedBytes();
+            long to   = seg.getEndByte();
+            if (from > to) {
+                seg.setStatus(SegmentStatus.COMPLETED);
+                return done();
+            }
+
+            HttpRequest req = HttpRequest.newBuilder()
+                    .uri(URI.create(url))
+                    .header("Range", "bytes=" + from + "-" + to)
+                    .GET()
+                    .build();
+            String host = req.uri().getHost();
+
+            return CompletableFuture
+                    .supplyAsync(() -> subscriber(seg, from, host), PERMIT_EXECUTOR)
+                    .thenCompose(sub -> {
+                        if (sub == null) return done();
+                        sub.sentAt = System.nanoTime();
+                        client.sendAsync(req, sub::handle).whenComplete((r, e) -> {
+                            if (e != null) sub.fail(unwrap(e));
+                        });
+                        return sub.result;
+                    });
+        }
+
+        private SegmentSubscriber subscriber(DownloadSegment seg, long from, String host) {
+            HostConnections.Permit permit;
+            try {
+                permit = hosts.acquire(host, control);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            // задачу скасували, поки чекали на слот хоста
+            if (permit == null) return null;
+
+            try {
+                LeafHasher hasher = digest.hasherFor(seg.getIndex(), from, seg.getStartByte(), out.channel());
+                return new SegmentSubscriber(this, seg, from, host, permit, hasher);
+            } catch (IOException | RuntimeException e) {
+                permit.close();
+                throw new CompletionException(e);
+            }
+        }
+
+        void fail(Throwable e) {
+            if (!error.compareAndSet(null, e)) return;
+            // один сегмент впав — решту зупиняємо
+            for (SegmentSubscriber s : active) {
+                s.stop();
+            }
+        }
+    }
+
+    /**
+     * Приймач тіла відповіді одного Range-запиту.
+     * Кожен буфер пишеться позиційно в канал задачі; наступна порція
+     * запитується лише після обліку швидкості, паузи і скасування.
+     */
+    private static final class SegmentSubscriber implements HttpResponse.BodySubscriber<Void> {
+
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private final Run run;
+        private final DownloadSegment seg;
+        private final long from;
+        private final String host;
+        private final HostConnections.Permit permit;
+        private final LeafHasher hasher;
+        private final TaskOutput.SegmentWriter writer;
+
+        private final AtomicBoolean finished = new AtomicBoolean();
+        // для TTFB: коли пішов запит і чи вже був перший байт
+        volatile long sentAt;
+        private boolean firstByte = true;
+        private volatile Flow.Subscription subscription;
+        private volatile IOException rejected;
+        private volatile DownloadControl.Registration registration;
+
+        SegmentSubscriber(Run run, DownloadSegment seg, long from, String host,
+                          HostConnections.Permit permit, LeafHasher hasher) {
+            this.run = run;
+            this.seg = seg;
+            this.from = from;
+            this.host = host;
+            this.permit = permit;
+            this.hasher = hasher;
+            this.writer = run.out.directWriter();
+        }
+
+        // BodyHandler: заголовки вже прийшли, тіло ще ні
+        HttpResponse.BodySubscriber<Void> handle(HttpResponse.ResponseInfo info) {
+            permit.connected(info.version());
+            rejected = rangeError(info.statusCode(), info.headers(), from, run.task.getTotalBytes());
+            return this;
+        }
+
+        @Override
+        public CompletionStage<Void> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            subscription = s;
+            if (rejected != null) {
+                s.cancel();
+                fail(rejected);
+                return;
+            }
+
+            seg.setStatus(SegmentStatus.RUNNING);
+            run.active.add(this);
+            // cancel() задачі має зупинити й запит, що чекає на дані
+            registration = run.control.closeOnCancel(this::stop);
+            s.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            try {
+                int bytes = 0;
+                for (ByteBuffer b : items) {
+                    bytes += consume(b);
+                    // кінець сегмента зсунувся (хвіст забрали) — решта відповіді не наша
+                    if (b.hasRemaining()) {
+                        subscription.cancel();
+                        finish();
+                        return;
+                    }
+                }
+                if (seg.getRemainingBytes() == 0) {
+                    subscription.cancel();
+                    finish();
+                    return;
+                }
+                demand(bytes);
+            } catch (Exception e) {
+                subscription.cancel();
+                fail(e);
+            }
+        }
+
+        private int consume(ByteBuffer b) throws IOException {
+            int n;
+            long position;
+            long downloaded;
+            ByteBuffer view;
+
+            synchronized (seg) {
+                n = (int) Math.min(b.remaining(), seg.getRemainingBytes());
+                if (n <= 0) return 0;
+
+                position = seg.getStartByte() + seg.getDownloadedBytes();
+                ByteBuffer chunk = b.slice(b.position(), n);
+                view = chunk.duplicate();
+                writer.write(chunk, position);
+                seg.setDownloadedBytes(seg.getDownloadedBytes() + n);
+                downloaded = seg.getDownloadedBytes();
+            }
+            b.position(b.position() + n);
+
+            // onNext приходять по одному, тож окремої синхронізації прапорцю не треба
+            if (firstByte) {
+                firstByte = false;
+                run.cb.onSegmentFirstByte(run.task.getId(), seg.getIndex(), System.nanoTime() - sentAt);
+            }
+            hasher.update(view, position);
+            run.cb.onSegmentProgress(run.task.getId(), seg.getIndex(), downloaded);
+            return n;
+        }
+
+        // backpressure: наступна порція — лише коли дозволяють ліміти і задача не на паузі
+        private void demand(int bytesJustWritten) {
+            if (finished.get()) return;
+
+            if (run.control.isCancelled()) {
+                stop();
+                return;
+            }
+            // пауза закриває відповідь, щоб не тримати слот хоста; сегмент продовжить runSegment
+            if (run.control.isPaused()) {
+                stop();
+                return;
+            }
+
+            long wait = bytesJustWritten > 0
+                    ? run.speed.reserve(run.task.getId(), host, bytesJustWritten)
+                    : 0;
+            if (wait > 0) {
+                DEMAND_TIMER.schedule(() -> demand(0), wait, TimeUnit.NANOSECONDS);
+                return;
+            }
+
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            if (run.control.isCancelled()) {
+                stop();
+            } else {
+                fail(t);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (seg.getRemainingBytes() > 0) {
+                fail(new IOException("Connection closed before end of segment " + seg.getIndex()));
+            } else {
+                finish();
+            }
+        }
+
+        private void finish() {
+            if (!finished.compareAndSet(false, true)) return;
+
+            hasher.finish(run.task.getTotalBytes());
+            run.digest.release(seg.getIndex());
+            seg.setStatus(SegmentStatus.COMPLETED);
+            cleanup();
+            result.complete(null);
+        }
+
+        // пауза, скасування або зупинка через збій сусіднього сегмента
+        void stop() {
+            if (!finished.compareAndSet(false, true)) return;
+
+            Flow.Subscription s = subscription;
+            if (s != null) s.cancel();
+            seg.setStatus(SegmentStatus.PAUSED);
+            cleanup();
+            result.complete(null);
+        }
+
+        void fail(Throwable e) {
+            if (!finished.compareAndSet(false, true)) return;
+
+            cleanup();
+            result.completeExceptionally(e);
+        }
+
+        private void cleanup() {
+            run.active.remove(this);
+            DownloadControl.Registration r = registration;
+            if (r != null) r.close();
+            writer.close();
+            permit.close();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package org.example.downloader;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Тіло відповіді як канал. HttpClient віддає свої ByteBuffer'и, а {@link #read}
+ * копіює їх прямо в буфер writer'а — direct-буфер пулу або вікно MappedByteBuffer,
+ * без проміжного byte[] на відповідь. Наперед запитується не більше
+ * {@link #PREFETCH_BYTES}: далі клієнт не читає сокет, доки воркер не вичитає чергу.
+ * Чекання — на ReentrantLock, не на моніторі, тож віртуальний потік, що чекає
+ * на дані, не займає носія.
+ */
+final class BodyChannel implements HttpResponse.BodySubscriber<ReadableByteChannel>, ReadableByteChannel {
+
+    private static final int PREFETCH_BYTES = TaskOutput.BUFFER_SIZE;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition ready = lock.newCondition();
+    private final ArrayDeque<ByteBuffer> chunks = new ArrayDeque<>();
+
+    private Flow.Subscription subscription;
+    private long queued;
+    // запит на наступну порцію вже відправлено
+    private boolean requested;
+    private boolean complete;
+    private Throwable error;
+    private boolean closed;
+
+    static HttpResponse.BodyHandler<ReadableByteChannel> handler() {
+        return info -> new BodyChannel();
+    }
+
+    // ===== BodySubscriber =====
+
+    @Override
+    public CompletionStage<ReadableByteChannel> getBody() {
+        // як ofInputStream: канал доступний одразу після заголовків
+        return CompletableFuture.completedFuture(this);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription s) {
+        boolean cancel;
+        lock.lock();
+        try {
+            subscription = s;
+            cancel = closed;
+            requested = !cancel;
+        } finally {
+            lock.unlock();
+        }
+        if (cancel) s.cancel(); else s.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> items) {
+        Flow.Subscription more;
+        lock.lock();
+        try {
+            requested = false;
+            if (closed) return;
+            for (ByteBuffer b : items) {
+                if (!b.hasRemaining()) continue;
+                chunks.add(b);
+                queued += b.remaining();
+            }
+            more = demand();
+            ready.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (more != null) more.request(1);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        lock.lock();
+        try {
+            error = t;
+            ready.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        lock.lock();
+        try {
+            complete = true;
+            ready.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ===== ReadableByteChannel =====
+
+    /** Чекає лише на першу порцію; далі віддає те, що вже прийшло, скільки влізе в dst. */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        Flow.Subscription more;
+        int total = 0;
+
+        lock.lock();
+        try {
+            if (closed) throw new ClosedChannelException();
+            while (chunks.isEmpty()) {
+                if (error != null) throw error instanceof IOException io ? io : new IOException(error);
+                if (complete) return -1;
+                try {
+                    ready.await();
+                } catch (InterruptedException e) {
+                    close();
+                    Thread.currentThread().interrupt();
+                    throw new ClosedByInterruptException();
+                }
+                if (closed) throw new AsynchronousCloseException();
+            }
+
+            while (dst.hasRemaining() && !chunks.isEmpty()) {
+                ByteBuffer b = chunks.peek();
+                int n = Math.min(b.remaining(), dst.remaining());
+                dst.put(dst.position(), b, b.position(), n);
+                dst.position(dst.position() + n);
+                b.position(b.position() + n);
+                if (!b.hasRemaining()) chunks.poll();
+                total += n;
+            }
+            queued -= total;
+            more = demand();
+        } finally {
+            lock.unlock();
+        }
+        if (more != null) more.request(1);
+        return total;
+    }
+
+    @Override
+    public boolean isOpen() {
+        lock.lock();
+        try {
+            return !closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Закриття скасовує підписку: клієнт обриває відповідь і більше нічого не доставляє. */
+    @Override
+    public void close() {
+        Flow.Subscription s;
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            chunks.clear();
+            queued = 0;
+            s = subscription;
+            ready.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (s != null) s.cancel();
+    }
+
+    // під замком: кому відправити request(1) вже після його зняття, або null
+    private Flow.Subscription demand() {
+        if (requested || complete || closed || subscription == null || queued >= PREFETCH_BYTES) return null;
+        requested = true;
+        return subscription;
+    }
+}
@@ -0,0 +1,185 @@
+package org.example.downloader;
+
+import org.example.core.DownloadControl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Спільний на процес пул direct-буферів для запису завантажень.
+ * Буфери однакового розміру створюються ліниво, але не більше, ніж дозволяє
+ * бюджет; коли бюджет вичерпано, воркер чекає, доки хтось поверне буфер.
+ * Так пам'ять під буфери має передбачувану стелю незалежно від кількості
+ * задач і сегментів.
+ */
+public class BufferPool {
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final long DEFAULT_CAPACITY_BYTES = 16L * 1024 * 1024;
+    private static final long POLL_MS = 50;
+    private static final BufferPool SHARED = new BufferPool(DEFAULT_CAPACITY_BYTES);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+
+    private int maxBuffers;
+    private int allocated;
+    private int inUse;
+    private int waiting;
+    private long waitNanosTotal;
+
+    public BufferPool(long capacityBytes) {
+        this.maxBuffers = buffersFor(capacityBytes);
+    }
+
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    public ByteBuffer acquire() throws InterruptedException {
+        return acquire(null);
+    }
+
+    /**
+     * Як {@link #acquire()}, але з оглядом на задачу: на паузі вона буфер не займає,
+     * а скасована більше не чекає — тоді null.
+     */
+    public ByteBuffer acquire(DownloadControl control) throws InterruptedException {
+        lock.lock();
+        try {
+            long waitStart = 0;
+            while (true) {
+                if (control != null && control.isCancelled()) return null;
+
+                ByteBuffer b = control != null && control.isPaused() ? null : take();
+                if (b != null) {
+                    if (waitStart != 0) waitNanosTotal += System.nanoTime() - waitStart;
+                    return b;
+                }
+
+                if (waitStart == 0) waitStart = System.nanoTime();
+                waiting++;
+                try {
+                    // стан задачі змінюється без сигналу пулу — перевіряємо його раз на POLL_MS
+                    if (control == null) available.await();
+                    else available.await(POLL_MS, TimeUnit.MILLISECONDS);
+                } finally {
+                    waiting--;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Буфер без чекання; null — бюджет вичерпано. */
+    public ByteBuffer tryAcquire() {
+        lock.lock();
+        try {
+            return take();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // під замком
+    private ByteBuffer take() {
+        ByteBuffer b = free.poll();
+        if (b == null && allocated < maxBuffers) {
+            allocated++;
+            b = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        if (b == null) return null;
+        inUse++;
+        return b.clear();
+    }
+
+    public void release(ByteBuffer b) {
+        lock.lock();
+        try {
+            inUse--;
+            if (allocated > maxBuffers) {
+                // бюджет зменшили — зайвий буфер просто віддаємо GC
+                allocated--;
+            } else {
+                free.push(b);
+            }
+            // усім: хто на паузі, буфер не візьме, і сигнал не має на ньому загубитись
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Новий бюджет діє одразу для вільних буферів, для зайнятих — коли їх повернуть. */
+    public void setCapacityBytes(long capacityBytes) {
+        lock.lock();
+        try {
+            maxBuffers = buffersFor(capacityBytes);
+            while (allocated > maxBuffers && !free.isEmpty()) {
+                free.pop();
+                allocated--;
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ===== Спостереження =====
+
+    public long getCapacityBytes() {
+        lock.lock();
+        try {
+            return (long) maxBuffers * BUFFER_SIZE;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getAllocatedBytes() {
+        lock.lock();
+        try {
+            return (long) allocated * BUFFER_SIZE;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getInUseBytes() {
+        lock.lock();
+        try {
+            return (long) inUse * BUFFER_SIZE;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWaitingCount() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Сумарний час, який воркери простояли в очікуванні буфера. */
+    public long getWaitNanosTotal() {
+        lock.lock();
+        try {
+            return waitNanosTotal;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int buffersFor(long capacityBytes) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, capacityBytes / BUFFER_SIZE));
+    }
+}
@@ -0,0 +1,231 @@
+package org.example.downloader;
+
+import org.example.model.DownloadSegment;
+import org.example.model.SegmentStatus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Фінал завантаження: пошук сегментів, що застрягли, і хеджовані запити для них.
+ * Раз на тік міряється швидкість кожного сегмента; сегмент, що впав набагато нижче
+ * медіани або зовсім стоїть, отримує другий Range-запит на свій залишок.
+ * Обидва запити пишуть ті самі байти на ті самі позиції, виграє той, хто першим
+ * дійде до кінця, а іншого закривають; якщо завис і хедж, його замінює новий.
+ * Стоїть і сегмент, чий запит так і не дочекався заголовків: час рахується від відправки.
+ * Хеджуються лише невеликі залишки і в межах бюджету на задачу, тож двічі
+ * качається обмежена кількість байт; великі повільні сегменти тим часом ділить work stealing.
+ */
+class Endgame {
+
+    static final long TICK_MS = 500;
+
+    // "набагато нижче медіани"
+    private static final double SLOW_FRACTION = 0.25;
+    private static final double EWMA_ALPHA = 0.5;
+    // стільки тіків швидкість міряється, перш ніж їй вірити
+    private static final int MIN_SAMPLES = 3;
+    // без жодного байта стільки часу — сегмент стоїть
+    private static final long STALL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    // залишок, більший за це, хеджувати дорого — його краще поділити
+    private static final long MAX_HEDGE_BYTES = 16L * 1024 * 1024;
+    // скільки байт на задачу можна скачати двічі
+    private static final double BUDGET_FRACTION = 0.05;
+    private static final long MIN_BUDGET_BYTES = 4L * 1024 * 1024;
+
+    static final int PRIMARY = 1;
+    static final int HEDGE = 2;
+
+    private final Map<Integer, Track> tracks = new ConcurrentHashMap<>();
+    private long budget;
+    private volatile boolean stopped;
+
+    Endgame(long totalBytes) {
+        this.budget = Math.max(MIN_BUDGET_BYTES, (long) (totalBytes * BUDGET_FRACTION));
+    }
+
+    Track track(DownloadSegment seg) {
+        return tracks.computeIfAbsent(seg.getIndex(), i -> new Track());
+    }
+
+    /**
+     * Один тік монітора: оновлює швидкості і повертає сегменти, яким час хеджуватись.
+     * Нічого не списує: хедж для сегмента викликач фіксує через {@link #hedge},
+     * коли для нього знайшовся слот хоста.
+     */
+    synchronized List<DownloadSegment> stragglers(List<DownloadSegment> segments, boolean paused) {
+        long now = System.nanoTime();
+        List<Double> rates = new ArrayList<>();
+
+        for (DownloadSegment seg : segments) {
+            Track t = track(seg);
+            long bytes = seg.getDownloadedBytes();
+            boolean running = t.active(seg) && !paused;
+
+            if (t.lastAt == 0 || !running) {
+                // на паузі і в черзі на з'єднання сегмент не "стоїть"
+                t.lastProgressAt = now;
+            } else {
+                // новий запит (повтор після збою) відлічує час від своєї відправки
+                t.lastProgressAt = Math.max(t.lastProgressAt, t.sentAt);
+                double rate = (bytes - t.lastBytes) * 1e9 / (now - t.lastAt);
+                t.rate = t.samples == 0 ? rate : EWMA_ALPHA * rate + (1 - EWMA_ALPHA) * t.rate;
+                t.samples++;
+                if (bytes > t.lastBytes) t.lastProgressAt = now;
+            }
+            t.lastBytes = bytes;
+            t.lastAt = now;
+
+            // завершені сегменти теж входять у медіану: у фіналі активних лишається мало
+            if (t.samples >= MIN_SAMPLES) rates.add(t.rate);
+        }
+
+        if (paused) return List.of();
+
+        double median = median(rates);
+        List<DownloadSegment> out = new ArrayList<>();
+
+        for (DownloadSegment seg : segments) {
+            Track t = track(seg);
+            if (!t.active(seg)) continue;
+
+            if (t.winner.get() != 0) continue;
+
+            long remaining = seg.getRemainingBytes();
+            if (remaining <= 0 || remaining > Math.min(MAX_HEDGE_BYTES, budget)) continue;
+
+            boolean stalled = now - t.lastProgressAt >= STALL_NANOS;
+            if (t.hedgedAt != 0) {
+                // хедж уже є: замінюємо його, лише якщо сегмент і з ним стоїть
+                if (!stalled || now - t.hedgedAt < STALL_NANOS) continue;
+            } else {
+                boolean slow = t.samples >= MIN_SAMPLES && median > 0 && t.rate < median * SLOW_FRACTION;
+                if (!stalled && !slow) continue;
+            }
+            out.add(seg);
+        }
+        return out;
+    }
+
+    /**
+     * Фіксує хедж для сегмента з {@link #stragglers}: списує бюджет і скасовує
+     * попередній хедж, що теж завис. false — бюджету вже не вистачає або сегмент
+     * тим часом завершився; тоді запит не відправляють.
+     * Новий хедж викликач передає в {@link Track#hedging}.
+     */
+    synchronized boolean hedge(DownloadSegment seg) {
+        Track t = track(seg);
+        long remaining = seg.getRemainingBytes();
+        if (t.winner.get() != 0 || remaining <= 0 || remaining > Math.min(MAX_HEDGE_BYTES, budget)) return false;
+
+        if (t.hedgedAt != 0) t.abandonHedge();
+        // списується весь залишок: скільки з нього встигне скачати хедж, наперед невідомо
+        t.hedgedAt = System.nanoTime();
+        budget -= remaining;
+        return true;
+    }
+
+    /**
+     * Задача зупиняється (успіх, збій чи скасування): хеджовані запити програють
+     * і закриваються, зокрема ті, що ще чекають на заголовки.
+     */
+    void stop() {
+        stopped = true;
+        for (Track t : tracks.values()) {
+            t.abandonHedge();
+        }
+    }
+
+    private static double median(List<Double> rates) {
+        if (rates.isEmpty()) return 0;
+        rates.sort(null);
+        int mid = rates.size() / 2;
+        return rates.size() % 2 == 1 ? rates.get(mid) : (rates.get(mid - 1) + rates.get(mid)) / 2;
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Стан одного сегмента: виміри швидкості і гонка основного запиту з хеджованим.
+     * Без хеджу основний запит виграє завжди, тож його код не розрізняє ці випадки.
+     */
+    final class Track {
+
+        // виміри пише лише монітор під замком Endgame
+        long lastBytes;
+        long lastAt;
+        long lastProgressAt;
+        double rate;
+        int samples;
+        long hedgedAt;
+        // основний запит відправлено, заголовків ще немає (0 — не чекає)
+        volatile long sentAt;
+
+        private final AtomicInteger winner = new AtomicInteger();
+        private volatile Closeable primaryStream;
+        private volatile Closeable hedgeStream;
+        private volatile Future<?> hedge;
+
+        void hedging(Future<?> hedge) {
+            this.hedge = hedge;
+            // stop() міг пройти раніше, ніж хедж потрапив сюди
+            if (stopped) hedge.cancel(true);
+        }
+
+        void sending(boolean waiting) {
+            sentAt = waiting ? System.nanoTime() : 0;
+        }
+
+        // сегмент качається або його запит чекає на відповідь
+        private boolean active(DownloadSegment seg) {
+            return seg.getStatus() == SegmentStatus.RUNNING || sentAt != 0;
+        }
+
+        // переривання знімає і запит, що ще чекає на заголовки
+        private void abandonHedge() {
+            Future<?> h = hedge;
+            if (h != null) h.cancel(true);
+            closeQuietly(hedgeStream);
+        }
+
+        /**
+         * Тіло відповіді поточної спроби; його закриє суперник, якщо виграє.
+         * Якщо гонку вже програно — закривається одразу.
+         */
+        void attach(int role, Closeable stream) {
+            if (role == PRIMARY) primaryStream = stream; else hedgeStream = stream;
+            if (lost(role)) closeQuietly(stream);
+        }
+
+        /** Дійшли до кінця сегмента; true — виграли, і суперника вже закрито. */
+        boolean win(int role) {
+            if (lost(role) || !winner.compareAndSet(0, role)) return won(role);
+            closeQuietly(role == PRIMARY ? hedgeStream : primaryStream);
+            return true;
+        }
+
+        boolean won(int role) {
+            return winner.get() == role;
+        }
+
+        boolean lost(int role) {
+            if (role == HEDGE && stopped) return true;
+            int w = winner.get();
+            return w != 0 && w != role;
+        }
+    }
+}
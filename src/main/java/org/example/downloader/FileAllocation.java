@@ -0,0 +1,10 @@
+package org.example.downloader;
+
+public enum FileAllocation {
+    // файл росте по мірі запису
+    NONE,
+    // одразу встановити повний розмір (на ext4/xfs це sparse-файл, на NTFS — виділення місця)
+    TRUNCATE,
+    // заповнити нулями: файлова система виділяє блоки заздалегідь і послідовно
+    FULL
+}
@@ -0,0 +1,162 @@
+package org.example.downloader;
+
+import org.example.core.DownloadControl;
+
+import java.net.http.HttpClient;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ліміт з'єднань на хост, спільний для всіх задач.
+ * Поки протокол хоста невідомий, запит іде один: інакше паралельні сегменти
+ * встигли б відкрити по власному TCP/TLS-з'єднанню ще до домовленості про HTTP/2.
+ * Якщо хост відповів по HTTP/2, решта запитів мультиплексуються в його
+ * з'єднанні й ліміту з'єднань не займають, але одночасних потоків на хост
+ * не більше за {@link #MAX_STREAMS_PER_HOST}; для HTTP/1.1 кожен запит — окреме з'єднання.
+ * Хеджовані запити не чекають: їм дістається вільний слот або один із
+ * {@link #SPARE_CONNECTIONS} запасних, тож ліміт хоста вони перевищують не більше ніж на стільки.
+ */
+class HostConnections {
+
+    // RFC 9113 радить серверам дозволяти щонайменше 100 одночасних потоків
+    static final int MAX_STREAMS_PER_HOST = 100;
+
+    // понад ліміт — лише для хеджів: звичайні слоти тримають якраз завислі відповіді
+    static final int SPARE_CONNECTIONS = 2;
+
+    // як часто чекання дозволу перевіряє, чи задачу не скасовано
+    private static final long POLL_MS = 50;
+
+    private final int limit;
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+
+    HostConnections(int limit) {
+        this.limit = Math.max(1, limit);
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Дозвіл на один запит; тримати до закриття тіла відповіді.
+     * Повертає null, якщо задачу скасували, поки чекали на дозвіл.
+     */
+    Permit acquire(String host, DownloadControl control) throws InterruptedException {
+        Host h = hosts.computeIfAbsent(host == null ? "" : host, k -> new Host(limit));
+
+        if (h.version == null) {
+            if (!take(h.scout, control)) return null;
+            if (h.version == null) {
+                // ми "розвідник": інші чекають, доки не прийдуть заголовки відповіді
+                boolean connected;
+                try {
+                    connected = take(h.connections, control);
+                } catch (InterruptedException e) {
+                    h.scout.release();
+                    throw e;
+                }
+                if (!connected) {
+                    h.scout.release();
+                    return null;
+                }
+                return new Permit(h, true, h.connections);
+            }
+            h.scout.release();
+        }
+
+        if (h.version == HttpClient.Version.HTTP_2) {
+            if (!take(h.streams, control)) return null;
+            return new Permit(h, false, h.streams);
+        }
+
+        if (!take(h.connections, control)) return null;
+        return new Permit(h, false, h.connections);
+    }
+
+    /**
+     * Дозвіл для хеджованого запиту без чекання: вільний слот, а коли їх немає —
+     * запасний. null — місця немає або протокол хоста ще невідомий.
+     */
+    Permit tryAcquireSpare(String host) {
+        Host h = hosts.get(host == null ? "" : host);
+        if (h == null || h.version == null) return null;
+
+        if (h.version == HttpClient.Version.HTTP_2) {
+            return h.streams.tryAcquire() ? new Permit(h, false, h.streams) : null;
+        }
+        if (h.connections.tryAcquire()) return new Permit(h, false, h.connections);
+        if (h.spare.tryAcquire()) return new Permit(h, false, h.spare);
+        return null;
+    }
+
+    HttpClient.Version version(String host) {
+        Host h = hosts.get(host);
+        return h == null ? null : h.version;
+    }
+
+    // чекання, яке перериває скасування задачі; false — скасовано
+    private static boolean take(Semaphore s, DownloadControl control) throws InterruptedException {
+        while (!s.tryAcquire(POLL_MS, TimeUnit.MILLISECONDS)) {
+            if (control.isCancelled()) return false;
+        }
+        return true;
+    }
+
+    private static final class Host {
+        final Semaphore connections;
+        final Semaphore streams = new Semaphore(MAX_STREAMS_PER_HOST, true);
+        final Semaphore spare = new Semaphore(SPARE_CONNECTIONS);
+        // семафор, а не lock: асинхронний запит відпускає його з іншого потоку
+        final Semaphore scout = new Semaphore(1);
+        // null — протокол ще невідомий
+        volatile HttpClient.Version version;
+
+        Host(int limit) {
+            this.connections = new Semaphore(limit, true);
+        }
+    }
+
+    static final class Permit implements AutoCloseable {
+        private final Host host;
+        private boolean scouting;
+        // з'єднання, потік HTTP/2 чи запасний слот; null — нічого не тримаємо
+        private Semaphore held;
+
+        private Permit(Host host, boolean scouting, Semaphore held) {
+            this.host = host;
+            this.scouting = scouting;
+            this.held = held;
+        }
+
+        /** Заголовки відповіді отримано — протокол з'єднання відомий. */
+        synchronized void connected(HttpClient.Version version) {
+            host.version = version;
+
+            if (version == HttpClient.Version.HTTP_2 && held == host.connections) {
+                // з ліміту з'єднань переходимо на ліміт потоків; розвідник тут перший,
+                // тож вільний потік є, а якщо ні — запит уже в дорозі, не чекаємо
+                held.release();
+                held = host.streams.tryAcquire() ? host.streams : null;
+            }
+            if (scouting) {
+                host.scout.release();
+                scouting = false;
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (scouting) {
+                host.scout.release();
+                scouting = false;
+            }
+            if (held != null) {
+                held.release();
+                held = null;
+            }
+        }
+    }
+}
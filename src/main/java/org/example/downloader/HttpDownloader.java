@@ -1,216 +1,811 @@
 package org.example.downloader;
 
 import org.example.core.DownloadControl;
+import org.example.digest.ContentDigest;
+import org.example.digest.LeafHasher;
 import org.example.model.DownloadSegment;
 import org.example.model.DownloadTask;
 import org.example.model.SegmentStatus;
+import org.example.segment.HttpRangePeer;
 import org.example.segment.Peer;
+import org.example.segment.PeerScoreboard;
 import org.example.speed.SpeedControl;
 
-import java.io.InputStream;
-import java.io.RandomAccessFile;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.net.URI;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 public class HttpDownloader extends AbstractDownloader {
 
-    private final HttpClient client = HttpClient.newBuilder()
-            .followRedirects(HttpClient.Redirect.NORMAL)
-            .build();
+    // менші залишки не ділимо: новий запит коштує дорожче, ніж докачати самому
+    static final long MIN_STEAL_BYTES = 512L * 1024;
+    // скільки чекати на заголовки відповіді на Range-запит; далі — збій і повтор
+    static final Duration RESPONSE_TIMEOUT = Duration.ofSeconds(30);
 
+    // спільний пул для клієнтів, яким транспорт не задав власний executor.
+    // Саме платформні потоки: клієнт доставляє в ньому тіла відповідей, і на
+    // віртуальних потоках доставка блокується, поки воркери чекають на дані
+    private static final Executor SHARED_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "http-client");
+        t.setDaemon(true);
+        return t;
+    });
+
+    volatile HttpClient client = buildClient(transport);
+    volatile HostConnections hosts = new HostConnections(transport.maxConnectionsPerHost());
+
+    private final ProbeCache probes = new ProbeCache(30_000);
+
+    public void setProbeTtlMillis(long ttlMillis) {
+        probes.setTtlMillis(ttlMillis);
+    }
+
+    /**
+     * Перебудовує клієнт лише коли конфігурація справді змінилась,
+     * щоб не губити вже відкриті (і HTTP/2-мультиплексовані) з'єднання.
+     */
     @Override
-    public long probeContentLength(String url) {
-        try {
-            HttpRequest head = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
-                    .build();
+    public synchronized void setTransport(TransportConfig config) {
+        if (config.equals(transport)) return;
+
+        HttpClient old = client;
+        super.setTransport(config);
+        client = buildClient(config);
+        hosts = new HostConnections(config.maxConnectionsPerHost());
 
-            HttpResponse<Void> resp =
-                    client.send(head, HttpResponse.BodyHandlers.discarding());
+        // запити, що вже в дорозі, старий клієнт дограє сам
+        old.shutdown();
+    }
 
-            return resp.headers()
-                    .firstValue("Content-Length")
-                    .map(Long::parseLong)
-                    .orElse(-1L);
+    private static HttpClient buildClient(TransportConfig config) {
+        return HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .version(config.version())
+                .connectTimeout(config.connectTimeout())
+                .executor(config.executor() != null ? config.executor() : SHARED_EXECUTOR)
+                .build();
+    }
+
+    /**
+     * Один HEAD-запит на URL: розмір, Accept-Ranges, ETag, Last-Modified, тип та ім'я файлу.
+     * Результат кешується з TTL, одночасні проби того самого URL зливаються.
+     */
+    public CompletableFuture<RemoteMetadata> probeAsync(String url) {
+        return probes.get(url, this::sendProbe);
+    }
+
+    @Override
+    public RemoteMetadata probe(String url) {
+        try {
+            return probeAsync(url).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return RemoteMetadata.unknown(url);
         } catch (Exception e) {
-            return -1L;
+            return RemoteMetadata.unknown(url);
         }
     }
-    public String detectExtensionByHead(String url) {
+
+    private CompletableFuture<RemoteMetadata> sendProbe(String url) {
         try {
             HttpRequest head = HttpRequest.newBuilder()
                     .uri(URI.create(url))
                     .method("HEAD", HttpRequest.BodyPublishers.noBody())
                     .build();
 
-            HttpResponse<Void> resp =
-                    client.send(head, HttpResponse.BodyHandlers.discarding());
-
-            // ===== 1. Content-Disposition =====
-            String cd = resp.headers()
-                    .firstValue("Content-Disposition")
-                    .orElse("");
-
-            if (!cd.isBlank()) {
-                int idx = cd.toLowerCase().lastIndexOf("filename=");
-                if (idx >= 0) {
-                    String name = cd.substring(idx + 9)
-                            .replace("\"", "")
-                            .trim();
-                    int dot = name.lastIndexOf('.');
-                    if (dot > 0 && dot < name.length() - 1) {
-                        return name.substring(dot + 1).toLowerCase();
-                    }
-                }
-            }
-
-            // ===== 2. Content-Type =====
-            String ct = resp.headers()
-                    .firstValue("Content-Type")
-                    .orElse("")
-                    .toLowerCase();
-
-            if (ct.contains("image/jpeg") || ct.contains("image/jpg")) return "jpg";
-            if (ct.contains("image/png")) return "png";
-            if (ct.contains("image/gif")) return "gif";
-
-            if (ct.contains("video/mp4")) return "mp4";
-            if (ct.contains("video/webm")) return "webm";
-            if (ct.contains("video/quicktime")) return "mov";
-
-            if (ct.contains("application/pdf")) return "pdf";
-            if (ct.contains("application/zip")) return "zip";
-
-
-            int q = url.indexOf('?');
-            String clean = q > 0 ? url.substring(0, q) : url;
-
-            int dot = clean.lastIndexOf('.');
-            if (dot > 0 && dot < clean.length() - 1) {
-                return clean.substring(dot + 1).toLowerCase();
-            }
-
-        } catch (Exception ignored) {}
-
-        return "bin";
+            return client.sendAsync(head, HttpResponse.BodyHandlers.discarding())
+                    .thenApply(resp -> RemoteMetadata.fromHeaders(url, resp.statusCode(), resp.headers()))
+                    .exceptionally(e -> RemoteMetadata.unknown(url));
+        } catch (IllegalArgumentException e) {
+            // некоректний URL (наприклад, недописаний у полі вводу)
+            return CompletableFuture.completedFuture(RemoteMetadata.unknown(url));
+        }
     }
 
-
+    public String detectExtensionByHead(String url) {
+        return probe(url).extension();
+    }
 
     @Override
     protected void doDownload(
             DownloadTask task,
+            Path tmpFile,
             List<DownloadSegment> segments,
+            ContentDigest digest,
             List<Peer> peers,
             SpeedControl speed,
             DownloadControl control,
             DownloadCallbacks cb
     ) throws Exception {
 
+        // без плану сегментів (розмір невідомий) — один потік; якщо сервер
+        // все ж повідомить розмір через Content-Range, переходимо на сегменти
+        if (segments.isEmpty()) {
+            boolean switched = streamDownload(task, tmpFile, digest, speed, control, cb, true);
+            if (!switched) {
+                if (!control.isCancelled()) cb.onCompleted(task.getId());
+                return;
+            }
+        }
 
+        try {
+            downloadSegments(task, tmpFile, segments, digest, peers, speed, control, cb);
+        } catch (RangeNotSupportedException e) {
+            cb.onLog("Task " + task.getId() + ": server ignores Range, switching to single stream");
+            synchronized (segments) {
+                segments.clear();
+                cb.onSegmentsChanged(task.getId(), segments);
+            }
+            streamDownload(task, tmpFile, digest, speed, control, cb, false);
+        }
 
-        for (DownloadSegment seg : segments) {
+        if (control.isCancelled()) return;
 
-            if (control.isCancelled()) return;
-            if (seg.getStatus() == SegmentStatus.COMPLETED) continue;
+        cb.onCompleted(task.getId());
+    }
 
-            long from = seg.getStartByte() + seg.getDownloadedBytes();
-            long to   = seg.getEndByte();
+    /** Паралельне завантаження плану сегментів; підклас може замінити модель виконання. */
+    protected void downloadSegments(DownloadTask task,
+                                  Path tmpFile,
+                                  List<DownloadSegment> segments,
+                                  ContentDigest digest,
+                                  List<Peer> peers,
+                                  SpeedControl speed,
+                                  DownloadControl control,
+                                  DownloadCallbacks cb) throws Exception {
+
+        // дзеркала того самого файлу; без них качаємо з основного URL
+        PeerScoreboard board = new PeerScoreboard(
+                peers.isEmpty() ? List.of(new HttpRangePeer("origin", task.getUrl())) : peers
+        );
+
+        // кожен сегмент качається своїм Range-запитом у власному virtual thread,
+        // а пише в один спільний канал задачі
+        try (TaskOutput out = TaskOutput.open(tmpFile, outputMode, task.getTotalBytes());
+             ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+
+            out.preallocate(fileAllocation);
+
+            // воркери сегментів здають результат у порядку завершення, а не запуску:
+            // перший збій видно одразу, поки решта ще качає
+            CompletionService<Void> finished = new ExecutorCompletionService<>(pool);
+            List<Future<Void>> running = new ArrayList<>();
+            // сегментів може бути більше, ніж дозволено з'єднань
+            Semaphore connections = new Semaphore(maxConnections);
+            Endgame endgame = new Endgame(task.getTotalBytes());
+
+            for (DownloadSegment seg : segments) {
+                if (seg.getStatus() == SegmentStatus.COMPLETED) continue;
+
+                running.add(finished.submit(() -> {
+                    connections.acquire();
+                    try {
+                        runSegment(task, seg, endgame, board, out, digest, speed, control, cb);
+
+                        // свій сегмент готовий — забираємо хвіст у найповільнішого,
+                        // поки є що забирати і ніхто не чекає на з'єднання
+                        DownloadSegment stolen;
+                        while (!control.isCancelled()
+                                && !connections.hasQueuedThreads()
+                                && (stolen = stealTail(task, segments, cb)) != null) {
+                            runSegment(task, stolen, endgame, board, out, digest, speed, control, cb);
+                        }
+                    } finally {
+                        connections.release();
+                    }
+                    return null;
+                }));
+            }
 
-            HttpRequest req = HttpRequest.newBuilder()
-                    .uri(URI.create(task.getUrl()))
-                    .header("Range", "bytes=" + from + "-" + to)
-                    .GET()
-                    .build();
+            // тік монітора: сегментам, що застрягли, — хеджований запит.
+            // Ліміту з'єднань задачі він не займає: завислі відповіді якраз і тримають ці слоти,
+            // а кількість хеджів обмежує бюджет Endgame. Буфер і слот хоста хедж бере без чекання
+            // (слот за потреби запасний); якщо чогось немає — спробує на наступному тіку
+            Runnable hedgeStragglers = () -> {
+                List<DownloadSegment> snapshot;
+                synchronized (segments) {
+                    snapshot = new ArrayList<>(segments);
+                }
+                for (DownloadSegment seg : endgame.stragglers(snapshot, control.isPaused())) {
+                    TaskOutput.SegmentWriter writer = out.tryWriter();
+                    if (writer == null) continue;
+                    Peer peer = board.pick(null);
+                    HostConnections.Permit permit = hosts.tryAcquireSpare(URI.create(peer.getBaseUrl()).getHost());
+                    if (permit == null || !endgame.hedge(seg)) {
+                        if (permit != null) permit.close();
+                        writer.close();
+                        continue;
+                    }
 
-            HttpResponse<InputStream> resp =
-                    client.send(req, HttpResponse.BodyHandlers.ofInputStream());
+                    cb.onLog("Task " + task.getId() + ": segment " + seg.getIndex()
+                            + " is lagging, hedging last " + seg.getRemainingBytes() + " bytes");
+                    Endgame.Track track = endgame.track(seg);
+                    track.hedging(pool.submit(
+                            () -> hedgeSegment(task, seg, track, peer, writer, permit, board, out, digest, speed, control, cb)));
+                }
+            };
+
+            try {
+                int done = 0;
+                while (done < running.size()) {
+                    // поки ніхто не завершився — тік монітора
+                    Future<Void> f = finished.poll(Endgame.TICK_MS, TimeUnit.MILLISECONDS);
+                    if (f == null) {
+                        if (!control.isCancelled()) hedgeStragglers.run();
+                        continue;
+                    }
+                    f.get();
+                    done++;
+                }
+            } catch (ExecutionException e) {
+                // один сегмент впав — решту зупиняємо, помилку віддаємо нагору
+                running.forEach(f -> f.cancel(true));
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception ex) throw ex;
+                throw e;
+            } finally {
+                // і після успіху: хедж, що ще чекає на заголовки, не тримає задачу відкритою,
+                // бо закриття пулу чекає на всі його задачі
+                endgame.stop();
+            }
+        }
+    }
 
-            if (resp.statusCode() != 206 && resp.statusCode() != 200) {
-                throw new RuntimeException("HTTP " + resp.statusCode());
+    /**
+     * Качає сегмент з дзеркала, яке порадить scoreboard.
+     * Якщо дзеркало підвело — воно отримує штраф, а сегмент після паузи за RetryPolicy
+     * продовжується з поточного зсуву: на іншому дзеркалі, якщо воно є, інакше на тому ж.
+     * Задачу валить лише сегмент, що вичерпав повтори.
+     */
+    private void runSegment(DownloadTask task,
+                            DownloadSegment seg,
+                            Endgame endgame,
+                            PeerScoreboard board,
+                            TaskOutput out,
+                            ContentDigest digest,
+                            SpeedControl speed,
+                            DownloadControl control,
+                            DownloadCallbacks cb) throws Exception {
+
+        RetryPolicy retry = retryPolicy;
+        Endgame.Track track = endgame.track(seg);
+        Peer peer = board.pick(null);
+        int failures = 0;
+
+        while (true) {
+            long before = seg.getDownloadedBytes();
+            long started = System.nanoTime();
+            try {
+                downloadSegment(task, seg, track, Endgame.PRIMARY, peer.getBaseUrl(), null, null,
+                        out, digest, speed, control, cb);
+                board.recordSuccess(peer, seg.getDownloadedBytes() - before, System.nanoTime() - started);
+
+                // пауза відпустила з'єднання; після resume — новий запит з поточного зсуву
+                if (seg.getStatus() != SegmentStatus.PAUSED || !control.checkpoint()) return;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                board.recordFailure(peer);
+                if (control.isCancelled()) throw e;
+
+                // спроба щось докачала — рахуємо збої заново
+                failures = seg.getDownloadedBytes() > before ? 1 : failures + 1;
+
+                Peer next = board.pick(peer);
+                if (failures > retry.retries() || !RetryPolicy.worthRetrying(e, next != peer)) throw e;
+
+                long delay = retry.delayNanos(failures);
+                cb.onLog("Task " + task.getId() + ": segment " + seg.getIndex()
+                        + " failed on " + peer.getId() + " (" + e.getMessage() + "), retry "
+                        + failures + "/" + retry.retries() + " on " + next.getId()
+                        + " in " + delay / 1_000_000 + " ms");
+                cb.onSegmentRetry(task.getId(), seg.getIndex());
+
+                if (!control.sleep(delay)) return;
+                peer = next;
             }
+        }
+    }
 
-            Path tmpFile = Path.of(task.getFileName() + ".bin");
+    /**
+     * Хеджований запит на залишок сегмента, що відстає: з того ж зсуву, на дзеркало
+     * і з буфером та слотом хоста, які вже зарезервував монітор.
+     * Помилки не повторюються і не валять задачу — за сегмент і далі відповідає основний воркер.
+     */
+    private void hedgeSegment(DownloadTask task,
+                              DownloadSegment seg,
+                              Endgame.Track track,
+                              Peer peer,
+                              TaskOutput.SegmentWriter writer,
+                              HostConnections.Permit permit,
+                              PeerScoreboard board,
+                              TaskOutput out,
+                              ContentDigest digest,
+                              SpeedControl speed,
+                              DownloadControl control,
+                              DownloadCallbacks cb) {
+
+        // буфер і слот звільняться, навіть якщо до запиту так і не дійшло
+        try (permit; writer) {
+            downloadSegment(task, seg, track, Endgame.HEDGE, peer.getBaseUrl(), writer, permit,
+                    out, digest, speed, control, cb);
+            if (track.won(Endgame.HEDGE)) {
+                cb.onLog("Task " + task.getId() + ": hedged request finished segment " + seg.getIndex() + " first");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // переривання — монітор сам зняв хедж, що теж завис
+            if (!track.lost(Endgame.HEDGE) && !control.isCancelled() && !Thread.currentThread().isInterrupted()) {
+                board.recordFailure(peer);
+                cb.onLog("Task " + task.getId() + ": hedged request for segment " + seg.getIndex()
+                        + " failed on " + peer.getId() + " (" + e.getMessage() + ")");
+            }
+        }
+    }
 
-            try (InputStream in = resp.body();
-                 RandomAccessFile raf = new RandomAccessFile(tmpFile.toFile(), "rw")) {
+    /**
+     * Одна відповідь на залишок сегмента. Основний запит і хеджований ({@code role})
+     * можуть качати сегмент одночасно: кожен пише ті самі байти на свої позиції,
+     * а сегмент завершує той, хто першим дійде до кінця. Основний запит чекає
+     * на буфер і слот хоста сам, хеджований приходить уже з ними (їх закриває викликач).
+     */
+    // реєстрацію в DownloadControl тримає сам try: вона живе рівно стільки, скільки тіло
+    @SuppressWarnings("try")
+    private void downloadSegment(DownloadTask task,
+                                 DownloadSegment seg,
+                                 Endgame.Track track,
+                                 int role,
+                                 String url,
+                                 TaskOutput.SegmentWriter reservedWriter,
+                                 HostConnections.Permit reserved,
+                                 TaskOutput out,
+                                 ContentDigest digest,
+                                 SpeedControl speed,
+                                 DownloadControl control,
+                                 DownloadCallbacks cb) throws Exception {
+
+        if (control.isCancelled() || track.lost(role)) return;
+
+        long from = seg.getStartByte() + seg.getDownloadedBytes();
+        long to   = seg.getEndByte();
+        if (from > to) {
+            seg.setStatus(SegmentStatus.COMPLETED);
+            return;
+        }
 
-                raf.seek(from);
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("Range", "bytes=" + from + "-" + to)
+                .timeout(RESPONSE_TIMEOUT)
+                .GET()
+                .build();
 
-                byte[] buf = new byte[8192];
-                int read;
+        String host = req.uri().getHost();
+        // хеш рахує лише основний запит; листки, які докачав хедж, дочитає root()
+        LeafHasher hasher = role == Endgame.PRIMARY
+                ? digest.hasherFor(seg.getIndex(), from, seg.getStartByte(), out.channel())
+                : null;
+
+        // скрізь спершу буфер, потім слот хоста: хто чекає на пам'ять, не тримає з'єднання,
+        // а хто тримає з'єднання, на пам'ять не чекає
+        TaskOutput.SegmentWriter writer = reservedWriter != null ? reservedWriter : out.writer(control);
+        // задачу скасували, поки чекали на буфер
+        if (writer == null) return;
+        HostConnections.Permit permit;
+        try {
+            permit = reserved != null ? reserved : hosts.acquire(host, control);
+        } catch (InterruptedException e) {
+            writer.close();
+            throw e;
+        }
+        // задачу скасували, поки чекали на слот хоста
+        if (permit == null) {
+            writer.close();
+            return;
+        }
 
-                while ((read = in.read(buf)) != -1) {
+        long sent = System.nanoTime();
+        HttpResponse<ReadableByteChannel> resp;
+        CompletableFuture<HttpResponse<ReadableByteChannel>> pending = client.sendAsync(req, BodyChannel.handler());
+        Closeable abort = () -> pending.cancel(true);
+        // поки немає заголовків, монітор рахує час від відправки: запит, що завис тут, теж хеджується.
+        // Суперник, що виграв, і cancel() знімають і такий запит
+        if (role == Endgame.PRIMARY) track.sending(true);
+        track.attach(role, abort);
+        try (DownloadControl.Registration ignored = control.closeOnCancel(abort)) {
+            resp = await(pending);
+            permit.connected(resp.version());
+            checkRangeResponse(resp, from, task.getTotalBytes());
+        } catch (Exception e) {
+            permit.close();
+            writer.close();
+            if (track.lost(role) || control.isCancelled()) return;
+            throw e;
+        } finally {
+            if (role == Endgame.PRIMARY) track.sending(false);
+        }
 
-                    if (control.isPaused()) {
-                        control.awaitResume();
-                    }
-                    if (control.isCancelled()) return;
+        if (role == Endgame.PRIMARY) seg.setStatus(SegmentStatus.RUNNING);
 
-                    raf.write(buf, 0, read);
-                    speed.throttle(read);
+        long position;
+        // з'єднання віддаємо останнім, уже після закриття тіла
+        try (permit;
+             writer;
+             ReadableByteChannel src = resp.body();
+             DownloadControl.Registration ignored = control.closeOnCancel(src)) {
 
-                    seg.setDownloadedBytes(
-                            seg.getDownloadedBytes() + read
-                    );
+            track.attach(role, src);
+            position = copySegment(task, seg, track, role, src, writer, from, hasher, host, sent, speed, control, cb);
+        }
+        if (position < 0) return;
+
+        // відповідь обірвалась раніше кінця сегмента — це збій, а не перемога
+        if (position <= seg.getEndByte()) {
+            if (track.lost(role)) return;
+            throw new IOException("Response ended at byte " + position + " of segment " + seg.getIndex());
+        }
+        if (!track.win(role)) return;
+
+        if (hasher != null) hasher.finish(task.getTotalBytes());
+        digest.release(seg.getIndex());
+        seg.setStatus(SegmentStatus.COMPLETED);
+    }
+
+    /**
+     * Цикл тіла сегмента: читання відповіді в буфер writer'а, commit під замком сегмента,
+     * хеш листків, throttle і прогрес. Позицію рухає лише ця відповідь; поділ може
+     * зсунути тільки кінець сегмента, тож цикл закінчується на поточному кінці.
+     *
+     * @return позиція, до якої дійшла відповідь, або -1, якщо сегмент покинули:
+     *         пауза, скасування чи гонку виграв суперник
+     */
+    long copySegment(DownloadTask task,
+                     DownloadSegment seg,
+                     Endgame.Track track,
+                     int role,
+                     ReadableByteChannel src,
+                     TaskOutput.SegmentWriter writer,
+                     long position,
+                     LeafHasher hasher,
+                     String host,
+                     long sent,
+                     SpeedControl speed,
+                     DownloadControl control,
+                     DownloadCallbacks cb) throws IOException, InterruptedException {
+
+        boolean firstByte = true;
+        while (true) {
+            int max = (int) Math.min(TaskOutput.BUFFER_SIZE, seg.getEndByte() + 1 - position);
+            if (max <= 0) break;
+
+            ByteBuffer buf = writer.buffer(position, max);
+            int read;
+            try {
+                read = readOrCancelled(src, buf, control);
+            } catch (IOException e) {
+                // суперник уже докачав сегмент і закрив цю відповідь
+                if (track.lost(role)) return -1;
+                throw e;
+            }
+            if (read == -1) break;
+            if (track.lost(role)) return -1;
+
+            // кінець сегмента може зсунутися, якщо хвіст забрав інший воркер;
+            // прогрес сегмента — найдальша позиція з двох відповідей
+            int n;
+            long downloaded;
+            synchronized (seg) {
+                n = (int) Math.min(read, seg.getEndByte() + 1 - position);
+                if (n > 0) {
+                    writer.commit(buf, position, n);
+                    seg.setDownloadedBytes(Math.max(seg.getDownloadedBytes(),
+                            position + n - seg.getStartByte()));
+                }
+                downloaded = seg.getDownloadedBytes();
+            }
 
-                    cb.onSegmentProgress(
-                            task.getId(),
-                            seg.getIndex(),
-                            seg.getDownloadedBytes()
-                    );
+            if (n > 0) {
+                if (firstByte) {
+                    firstByte = false;
+                    cb.onSegmentFirstByte(task.getId(), seg.getIndex(), System.nanoTime() - sent);
                 }
+                if (hasher != null) hasher.update(written(buf, n), position);
+                position += n;
+                control.throttle(speed.reserve(task.getId(), host, n));
+                cb.onSegmentProgress(task.getId(), seg.getIndex(), downloaded);
             }
 
-            seg.setStatus(SegmentStatus.COMPLETED);
+            // на паузі відповідь закривається: слот хоста не простоює за задачею,
+            // що стоїть, а після resume runSegment продовжить сегмент новим запитом
+            if (control.isPaused() || control.isCancelled()) {
+                if (role == Endgame.PRIMARY) seg.setStatus(SegmentStatus.PAUSED);
+                return -1;
+            }
+            if (n < read) break;
         }
+        return position;
+    }
 
-        cb.onCompleted(task.getId());
+    // дзеркало має віддати саме наш діапазон саме цього файлу
+    private void checkRangeResponse(HttpResponse<ReadableByteChannel> resp, long from, long expectedTotal) throws IOException {
+        IOException error = rangeError(resp.statusCode(), resp.headers(), from, expectedTotal);
+        if (error != null) {
+            resp.body().close();
+            throw error;
+        }
     }
 
+    /** Причина, з якої відповідь не підходить для сегмента, або null. */
+    static IOException rangeError(int code, HttpHeaders headers, long from, long expectedTotal) {
+        if (code == 200 && from == 0) return null; // повне тіло з нуля — теж підходить
+        if (code != 206) {
+            return code == 200 ? new RangeNotSupportedException() : new HttpStatusException(code);
+        }
+
+        if (expectedTotal <= 0) return null;
 
-    private void singleStreamDownload(DownloadTask task,
-                                      Path outPath,
-                                      SpeedControl speedControl,
-                                      DownloadControl control,
-                                      DownloadCallbacks callbacks) throws Exception {
+        long total = parseContentRangeTotal(headers);
+        if (total > 0 && total != expectedTotal) {
+            return new IOException("Size mismatch: " + total + " != " + expectedTotal);
+        }
+        return null;
+    }
 
-        HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(task.getUrl()))
-                .GET()
-                .build();
+    /**
+     * Ділить навпіл залишок найбільшого незавершеного сегмента.
+     * Поточний сегмент закінчується на точці поділу, а хвіст стає новим сегментом,
+     * який одразу зберігається разом з усім планом (одна транзакція saveSegments).
+     */
+    DownloadSegment stealTail(DownloadTask task,
+                                      List<DownloadSegment> segments,
+                                      DownloadCallbacks cb) {
+        synchronized (segments) {
+            DownloadSegment victim = null;
+            long best = 0;
+            int maxIndex = -1;
+
+            for (DownloadSegment s : segments) {
+                maxIndex = Math.max(maxIndex, s.getIndex());
+                if (s.getStatus() == SegmentStatus.COMPLETED) continue;
+                long remaining = s.getRemainingBytes();
+                if (remaining > best) {
+                    best = remaining;
+                    victim = s;
+                }
+            }
+            if (victim == null) return null;
+
+            DownloadSegment tail;
+            synchronized (victim) {
+                long remaining = victim.getRemainingBytes();
+                if (remaining < 2 * MIN_STEAL_BYTES) return null;
+
+                long splitAt = victim.getStartByte() + victim.getDownloadedBytes() + remaining / 2;
+                // по межі листка tree-sha256; MIN_STEAL_BYTES > листка, тож обидві частини непорожні
+                splitAt -= splitAt % ContentDigest.LEAF_SIZE;
+                tail = new DownloadSegment(0, task.getId(), maxIndex + 1, splitAt, victim.getEndByte());
+                victim.setEndByte(splitAt - 1);
+            }
 
-        HttpResponse<InputStream> resp =
-                client.send(req, HttpResponse.BodyHandlers.ofInputStream());
+            segments.add(tail);
+            cb.onSegmentsChanged(task.getId(), segments);
+            cb.onLog("Task " + task.getId() + ": segment " + victim.getIndex()
+                    + " split, tail -> segment " + tail.getIndex());
+            return tail;
+        }
+    }
 
-        try (InputStream in = resp.body();
-             RandomAccessFile raf = new RandomAccessFile(outPath.toFile(), "rw")) {
 
-            byte[] buf = new byte[8192];
-            int read;
-            long downloaded = 0;
+    /**
+     * Один потік без сегментів: для серверів без Range або без Content-Length.
+     * Завжди свіжий запит з нуля (докачати без Range неможливо). Запит іде з
+     * "Range: bytes=0-": якщо сервер відповість 206 з повним розміром, задача
+     * отримує план сегментів і метод повертає true — далі качають сегменти.
+     */
+    // реєстрацію в DownloadControl тримає сам try: вона живе рівно стільки, скільки тіло
+    @SuppressWarnings("try")
+    private boolean streamDownload(DownloadTask task,
+                                   Path tmpFile,
+                                   ContentDigest digest,
+                                   SpeedControl speed,
+                                   DownloadControl control,
+                                   DownloadCallbacks cb,
+                                   boolean allowSegmented) throws Exception {
+
+        HttpRequest.Builder rb = HttpRequest.newBuilder()
+                .uri(URI.create(task.getUrl()))
+                .GET();
+        if (allowSegmented) rb.header("Range", "bytes=0-");
+        HttpRequest req = rb.build();
+
+        String host = req.uri().getHost();
+
+        // буфер — до слота хоста, як і в сегментах; null — скасували, поки чекали на нього
+        try (TaskOutput out = TaskOutput.open(tmpFile);
+             TaskOutput.SegmentWriter writer = out.writer(control)) {
+            if (writer == null) return false;
+
+            HostConnections.Permit permit = hosts.acquire(host, control);
+            if (permit == null) return false;
+
+            long sent = System.nanoTime();
+            HttpResponse<ReadableByteChannel> resp;
+            try {
+                resp = client.send(req, BodyChannel.handler());
+                permit.connected(resp.version());
+            } catch (Exception e) {
+                permit.close();
+                throw e;
+            }
 
-            while ((read = in.read(buf)) != -1) {
+            int code = resp.statusCode();
+            if (code != 200 && code != 206) {
+                resp.body().close();
+                permit.close();
+                throw new HttpStatusException(code);
+            }
 
-                if (control.isCancelled()) return;
-                if (control.isPaused()) {
-                    control.awaitResume();
+            if (code == 206) {
+                long total = parseContentRangeTotal(resp.headers());
+                if (total > 0 && allowSegmented) {
+                    resp.body().close();
+                    permit.close();
+                    task.setTotalBytes(total);
+                    cb.onTotalBytesKnown(task.getId(), total);
+                    cb.onContentLengthDiscovered(task.getId(), total);
+                    cb.onLog("Task " + task.getId() + ": server reported " + total + " bytes, switching to segments");
+                    return true;
                 }
+            } else {
+                long length = parseContentLength(resp.headers());
+                if (length > 0) task.setTotalBytes(length);
+            }
+
+            try (permit;
+                 ReadableByteChannel src = resp.body();
+                 DownloadControl.Registration ignored = control.closeOnCancel(src)) {
 
+                // розмір став відомий лише зараз: перевіряємо місце до запису
+                if (task.getTotalBytes() > 0) cb.onTotalBytesKnown(task.getId(), task.getTotalBytes());
 
-                raf.write(buf, 0, read);
-                downloaded += read;
+                // попередній частковий вміст уже не актуальний
+                out.channel().truncate(0);
+                digest.reset();
+                LeafHasher hasher = digest.hasherFor(0, 0, 0, out.channel());
 
-                speedControl.throttle(read);
+                long downloaded = 0;
 
-                callbacks.onSegmentProgress(task.getId(), 0, downloaded);
+                while (true) {
+                    ByteBuffer buf = writer.buffer(downloaded, TaskOutput.BUFFER_SIZE);
+                    int read = readOrCancelled(src, buf, control);
+                    if (read == -1) break;
+
+                    // без Range новим запитом не продовжити, тож на паузі з'єднання лишається за нами
+                    if (!control.checkpoint()) return false;
+                    if (read == 0) continue;
+
+                    if (downloaded == 0) {
+                        cb.onSegmentFirstByte(task.getId(), 0, System.nanoTime() - sent);
+                    }
+                    writer.commit(buf, downloaded, read);
+                    hasher.update(written(buf, read), downloaded);
+                    downloaded += read;
+
+                    control.throttle(speed.reserve(task.getId(), host, read));
+                    cb.onSegmentProgress(task.getId(), 0, downloaded);
+                }
+
+                if (task.getTotalBytes() <= 0) task.setTotalBytes(downloaded);
+                hasher.finish(downloaded);
+                digest.release(0);
             }
         }
+        return false;
+    }
+
+    // як send(), але запит можна зняти, скасувавши future; збій віддається своїм типом
+    private static <T> HttpResponse<T> await(CompletableFuture<HttpResponse<T>> pending)
+            throws IOException, InterruptedException {
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            pending.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IOException(cause);
+        }
+    }
+
+    // перші n байт буфера, незалежно від того, що з ним зробив commit
+    private static ByteBuffer written(ByteBuffer buf, int n) {
+        ByteBuffer view = buf.duplicate();
+        view.limit(n).position(0);
+        return view;
+    }
+
+    /**
+     * Читання, яке cancel() перериває закриттям потоку.
+     * Помилку від такого закриття не вважаємо збоєм: повертаємо 0,
+     * а цикл читання наступною перевіркою побачить скасування.
+     */
+    private int readOrCancelled(ReadableByteChannel src, ByteBuffer buf, DownloadControl control) throws IOException {
+        try {
+            return src.read(buf);
+        } catch (IOException e) {
+            if (control.isCancelled()) return 0;
+            throw e;
+        }
+    }
+
+    // Content-Length: 1000  ->  1000 (або -1, якщо заголовка немає чи він зіпсований)
+    static long parseContentLength(HttpHeaders headers) {
+        String value = headers.firstValue("Content-Length").orElse("").trim();
+        if (value.isEmpty()) return -1;
+        try {
+            long length = Long.parseLong(value);
+            return length >= 0 ? length : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Content-Range: bytes 0-999/1000  ->  1000 (або -1, якщо розмір "*")
+    static long parseContentRangeTotal(HttpHeaders headers) {
+        String range = headers.firstValue("Content-Range").orElse("");
+        int slash = range.lastIndexOf('/');
+        if (slash < 0) return -1;
+        try {
+            return Long.parseLong(range.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static class RangeNotSupportedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RangeNotSupportedException() {
+            super("Range not supported");
+        }
+    }
+
+    // неуспішний статус відповіді; за кодом RetryPolicy вирішує, чи є сенс повторювати
+    static class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+
+        HttpStatusException(int statusCode) {
+            super("HTTP " + statusCode);
+            this.statusCode = statusCode;
+        }
+
+        int getStatusCode() {
+            return statusCode;
+        }
     }
 }
@@ -0,0 +1,8 @@
+package org.example.downloader;
+
+public enum OutputMode {
+    // позиційні FileChannel.write з direct-буферів
+    STREAM,
+    // буфери відповіді копіюються прямо у MappedByteBuffer-вікно сегмента (лише коли розмір відомий)
+    MAPPED
+}
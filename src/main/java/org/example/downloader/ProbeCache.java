@@ -0,0 +1,73 @@
+package org.example.downloader;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Кеш результатів HEAD-проб по URL з TTL.
+ * Одночасні проби одного URL зливаються в один запит; кожен викликач отримує
+ * власну копію future, тож скасування одним (наприклад, UI) не чіпає інших.
+ */
+public class ProbeCache {
+
+    private static final int SWEEP_THRESHOLD = 256;
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<RemoteMetadata>> inFlight = new ConcurrentHashMap<>();
+
+    private volatile long ttlMillis;
+
+    public ProbeCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public CompletableFuture<RemoteMetadata> get(String url,
+                                                 Function<String, CompletableFuture<RemoteMetadata>> loader) {
+        Entry e = cache.get(url);
+        if (e != null) {
+            if (!e.isExpired()) return CompletableFuture.completedFuture(e.metadata);
+            cache.remove(url, e);
+        }
+
+        CompletableFuture<RemoteMetadata> mine = new CompletableFuture<>();
+        CompletableFuture<RemoteMetadata> shared = inFlight.putIfAbsent(url, mine);
+
+        if (shared == null) {
+            shared = mine;
+            loader.apply(url).whenComplete((m, err) -> {
+                inFlight.remove(url, mine);
+                if (m != null && m.isReachable()) put(url, m);
+
+                if (err != null) mine.completeExceptionally(err);
+                else mine.complete(m);
+            });
+        }
+
+        return shared.thenApply(m -> m);
+    }
+
+    public void invalidate(String url) {
+        cache.remove(url);
+    }
+
+    private void put(String url, RemoteMetadata m) {
+        if (ttlMillis <= 0) return;
+
+        if (cache.size() >= SWEEP_THRESHOLD) {
+            cache.values().removeIf(Entry::isExpired);
+        }
+        cache.put(url, new Entry(m, System.currentTimeMillis() + ttlMillis));
+    }
+
+    private record Entry(RemoteMetadata metadata, long expiresAt) {
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+}
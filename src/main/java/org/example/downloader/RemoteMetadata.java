@@ -0,0 +1,100 @@
+package org.example.downloader;
+
+import java.net.http.HttpHeaders;
+import java.util.Locale;
+
+/**
+ * Усе, що ми знаємо про файл на сервері після одного HEAD-запиту.
+ * {@code statusCode} = -1, якщо сервер не відповів.
+ */
+public record RemoteMetadata(
+        String url,
+        int statusCode,
+        long contentLength,
+        boolean acceptsRanges,
+        String etag,
+        String lastModified,
+        String contentType,
+        String fileName
+) {
+
+    public static RemoteMetadata unknown(String url) {
+        return new RemoteMetadata(url, -1, -1, false, null, null, "", null);
+    }
+
+    public static RemoteMetadata fromHeaders(String url, int statusCode, HttpHeaders h) {
+        long length = -1;
+        try {
+            length = h.firstValue("Content-Length").map(Long::parseLong).orElse(-1L);
+        } catch (NumberFormatException ignored) {}
+
+        boolean ranges = h.firstValue("Accept-Ranges")
+                .map(v -> v.toLowerCase(Locale.ROOT).contains("bytes"))
+                .orElse(false);
+
+        return new RemoteMetadata(
+                url,
+                statusCode,
+                length,
+                ranges,
+                h.firstValue("ETag").orElse(null),
+                h.firstValue("Last-Modified").orElse(null),
+                h.firstValue("Content-Type").orElse("").toLowerCase(Locale.ROOT),
+                parseFileName(h.firstValue("Content-Disposition").orElse(""))
+        );
+    }
+
+    public boolean isReachable() {
+        return statusCode >= 200 && statusCode < 400;
+    }
+
+    // ===== Content-Disposition: attachment; filename="a.zip" =====
+    private static String parseFileName(String cd) {
+        if (cd.isBlank()) return null;
+
+        int idx = cd.toLowerCase(Locale.ROOT).lastIndexOf("filename=");
+        if (idx < 0) return null;
+
+        String name = cd.substring(idx + 9);
+        int semi = name.indexOf(';');
+        if (semi >= 0) name = name.substring(0, semi);
+        name = name.replace("\"", "").trim();
+        return name.isEmpty() ? null : name;
+    }
+
+    /** Розширення файлу: з імені у Content-Disposition, з Content-Type, з URL; інакше "bin". */
+    public String extension() {
+        // ===== 1. Content-Disposition =====
+        if (fileName != null) {
+            int dot = fileName.lastIndexOf('.');
+            if (dot > 0 && dot < fileName.length() - 1) {
+                return fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+            }
+        }
+
+        // ===== 2. Content-Type =====
+        String ct = contentType == null ? "" : contentType;
+
+        if (ct.contains("image/jpeg") || ct.contains("image/jpg")) return "jpg";
+        if (ct.contains("image/png")) return "png";
+        if (ct.contains("image/gif")) return "gif";
+
+        if (ct.contains("video/mp4")) return "mp4";
+        if (ct.contains("video/webm")) return "webm";
+        if (ct.contains("video/quicktime")) return "mov";
+
+        if (ct.contains("application/pdf")) return "pdf";
+        if (ct.contains("application/zip")) return "zip";
+
+        // ===== 3. URL =====
+        int q = url.indexOf('?');
+        String clean = q > 0 ? url.substring(0, q) : url;
+        int slash = clean.lastIndexOf('/');
+        int dot = clean.lastIndexOf('.');
+        if (dot > slash && dot > 0 && dot < clean.length() - 1) {
+            return clean.substring(dot + 1).toLowerCase(Locale.ROOT);
+        }
+
+        return "bin";
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.downloader;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Повтори сегмента після збою: експоненційна затримка з jitter.
+ * retries — скільки збоїв поспіль сегмент переживає; спроба, що докачала
+ * хоч байт, обнуляє лічильник, тож довге завантаження з рідкими обривами не вичерпує ліміт.
+ * Кожна спроба продовжує з поточного зсуву сегмента.
+ */
+public record RetryPolicy(
+        int retries,
+        Duration baseDelay,
+        Duration maxDelay
+) {
+
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(30);
+
+    public RetryPolicy {
+        retries = Math.max(0, retries);
+        if (baseDelay == null || baseDelay.isNegative()) baseDelay = Duration.ofMillis(500);
+        if (maxDelay == null || maxDelay.compareTo(baseDelay) < 0) maxDelay = baseDelay;
+    }
+
+    public static RetryPolicy defaults() {
+        return new RetryPolicy(5, Duration.ofMillis(500), DEFAULT_MAX_DELAY);
+    }
+
+    /** Затримка перед повтором номер {@code attempt} (з 1): половина фіксована, половина випадкова. */
+    public long delayNanos(int attempt) {
+        long base = baseDelay.toNanos();
+        long cap = maxDelay.toNanos();
+        long exp = Math.min(cap, base << Math.min(20, Math.max(0, attempt - 1)));
+
+        long half = exp / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    /**
+     * Чи варто повторювати. На інше дзеркало переходимо після будь-якої помилки,
+     * а те саме пробуємо знову лише після тимчасової: обрив, таймаут, 5xx, 408, 429.
+     */
+    public static boolean worthRetrying(Throwable e, boolean otherPeer) {
+        if (e instanceof InterruptedException) return false;
+        if (otherPeer) return true;
+
+        if (e instanceof HttpDownloader.RangeNotSupportedException) return false;
+        if (e instanceof HttpDownloader.HttpStatusException s) {
+            return s.getStatusCode() >= 500 || s.getStatusCode() == 408 || s.getStatusCode() == 429;
+        }
+        return e instanceof IOException;
+    }
+}
@@ -0,0 +1,299 @@
+package org.example.downloader;
+
+import org.example.core.DownloadControl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Тимчасовий файл однієї задачі: один FileChannel на всі сегменти.
+ * Кожен сегмент пише через свій {@link SegmentWriter}: у режимі STREAM це
+ * позиційні write(buffer, position) з direct-буферів спільного {@link BufferPool},
+ * у режимі MAPPED — вікно MappedByteBuffer над діапазоном сегмента, куди {@link BodyChannel}
+ * копіює буфери відповіді HttpClient без проміжного буфера.
+ * <p>
+ * Розмапити вікно напряму Java не дає: це робить збирач сміття, коли на вікно
+ * більше немає посилань. Тому пройдене вікно спершу скидається на диск через force(),
+ * щоб брудні сторінки не накопичувались, а адресний простір усіх ще не розмаплених вікон
+ * обмежено {@link #MAX_MAPPED_BYTES}: понад ліміт writer пише через канал з буфера пулу,
+ * доки збирач не звільнить старі вікна.
+ */
+public class TaskOutput implements AutoCloseable {
+
+    static final int BUFFER_SIZE = BufferPool.BUFFER_SIZE;
+    // одне вікно на сегмент; при просуванні сегмента вікно перемаплюється
+    static final long MAP_WINDOW_SIZE = 32L * 1024 * 1024;
+    // ліміт на весь процес: вікна, які ще тримають адресний простір (у т.ч. вже відпущені,
+    // але не зібрані GC); облік зменшує Cleaner, коли вікно стає недосяжним
+    static final long MAX_MAPPED_BYTES = 1024L * 1024 * 1024;
+    private static final AtomicLong MAPPED_BYTES = new AtomicLong();
+    private static final Cleaner UNMAPPED = Cleaner.create();
+
+    private final FileChannel channel;
+    private final OutputMode mode;
+    private final long totalBytes;
+    private final BufferPool pool;
+
+    private TaskOutput(FileChannel channel, OutputMode mode, long totalBytes, BufferPool pool) {
+        this.channel = channel;
+        this.mode = mode;
+        this.totalBytes = totalBytes;
+        this.pool = pool;
+    }
+
+    public static TaskOutput open(Path file) throws IOException {
+        return open(file, OutputMode.STREAM, -1);
+    }
+
+    public static TaskOutput open(Path file, OutputMode mode, long totalBytes) throws IOException {
+        return open(file, mode, totalBytes, BufferPool.shared());
+    }
+
+    public static TaskOutput open(Path file, OutputMode mode, long totalBytes, BufferPool pool) throws IOException {
+        FileChannel ch = FileChannel.open(file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.READ);
+
+        // без відомого розміру мапити нічого
+        OutputMode effective = totalBytes > 0 ? mode : OutputMode.STREAM;
+        return new TaskOutput(ch, effective, totalBytes, pool);
+    }
+
+    /**
+     * Доводить файл до повного розміру ще до старту сегментів.
+     * Уже записані байти (resume) не чіпаються — добивається лише хвіст.
+     */
+    public void preallocate(FileAllocation allocation) throws IOException {
+        if (totalBytes <= 0 || allocation == FileAllocation.NONE) return;
+
+        long size = channel.size();
+        if (size >= totalBytes) return;
+
+        if (allocation == FileAllocation.TRUNCATE) {
+            // останній байт задає довжину; середина лишається "діркою"
+            write(ByteBuffer.allocate(1), totalBytes - 1);
+            return;
+        }
+
+        ByteBuffer zeros = ByteBuffer.allocateDirect(1024 * 1024);
+        long pos = size;
+        while (pos < totalBytes) {
+            zeros.clear();
+            zeros.limit((int) Math.min(zeros.capacity(), totalBytes - pos));
+            write(zeros, pos);
+            pos += zeros.limit();
+        }
+    }
+
+    public OutputMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Writer для циклу читання. У режимі STREAM одразу займає буфер зі спільного
+     * пулу і, якщо бюджет вичерпано, чекає на нього.
+     */
+    public SegmentWriter writer() throws IOException {
+        return mode == OutputMode.MAPPED ? new MappedWriter() : new StreamWriter(borrowBuffer());
+    }
+
+    /**
+     * Як {@link #writer()}, але чекання на буфер поважає паузу і скасування задачі.
+     * null — задачу скасували, поки чекали.
+     */
+    public SegmentWriter writer(DownloadControl control) throws IOException {
+        if (mode == OutputMode.MAPPED) return new MappedWriter();
+        try {
+            ByteBuffer b = pool.acquire(control);
+            return b == null ? null : new StreamWriter(b);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a buffer");
+        }
+    }
+
+    /** Writer без чекання: null, якщо бюджет пулу вичерпано. */
+    public SegmentWriter tryWriter() {
+        if (mode == OutputMode.MAPPED) return new MappedWriter();
+        ByteBuffer b = pool.tryAcquire();
+        return b == null ? null : new StreamWriter(b);
+    }
+
+    /** Writer лише для {@link SegmentWriter#write} чужих буферів — без буфера з пулу. */
+    public SegmentWriter directWriter() {
+        return mode == OutputMode.MAPPED ? new MappedWriter() : new StreamWriter(null);
+    }
+
+    /** Записує весь залишок буфера, починаючи з {@code position} у файлі. */
+    public void write(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+    /** Буфер зі спільного пулу; якщо бюджет вичерпано — чекає на вільний. */
+    public ByteBuffer borrowBuffer() throws InterruptedIOException {
+        try {
+            return pool.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a buffer");
+        }
+    }
+
+    public void releaseBuffer(ByteBuffer b) {
+        pool.release(b);
+    }
+
+    public FileChannel channel() {
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Запис одного сегмента: спершу {@link #buffer} дає місце, куди читати
+     * наступні байти, потім {@link #commit} фіксує, скільки з них належить сегменту.
+     */
+    public interface SegmentWriter extends AutoCloseable {
+        ByteBuffer buffer(long position, int maxBytes) throws IOException;
+
+        void commit(ByteBuffer buf, long position, int bytes) throws IOException;
+
+        /** Пише чужий буфер (наприклад, отриманий від HttpClient) без проміжної копії. */
+        void write(ByteBuffer src, long position) throws IOException;
+
+        @Override
+        void close();
+    }
+
+    private class StreamWriter implements SegmentWriter {
+
+        private ByteBuffer buf;
+
+        StreamWriter(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public ByteBuffer buffer(long position, int maxBytes) throws IOException {
+            if (buf == null) buf = borrowBuffer();
+            buf.clear();
+            buf.limit(Math.min(buf.capacity(), maxBytes));
+            return buf;
+        }
+
+        @Override
+        public void commit(ByteBuffer b, long position, int bytes) throws IOException {
+            b.flip();
+            b.limit(bytes);
+            write(b, position);
+        }
+
+        @Override
+        public void write(ByteBuffer src, long position) throws IOException {
+            TaskOutput.this.write(src, position);
+        }
+
+        @Override
+        public void close() {
+            if (buf != null) releaseBuffer(buf);
+            buf = null;
+        }
+    }
+
+    private class MappedWriter implements SegmentWriter {
+
+        private MappedByteBuffer window;
+        private long windowStart = -1;
+        // запис через канал, поки ліміт адресного простору вичерпано
+        private StreamWriter fallback;
+
+        @Override
+        public ByteBuffer buffer(long position, int maxBytes) throws IOException {
+            if (window == null
+                    || position < windowStart
+                    || position >= windowStart + window.capacity()) {
+                retire();
+                window = map(position);
+                if (window == null) {
+                    if (fallback == null) fallback = new StreamWriter(null);
+                    return fallback.buffer(position, maxBytes);
+                }
+                windowStart = position;
+            }
+
+            int offset = (int) (position - windowStart);
+            int len = Math.min(maxBytes, window.capacity() - offset);
+            return window.slice(offset, len);
+        }
+
+        @Override
+        public void commit(ByteBuffer buf, long position, int bytes) throws IOException {
+            // з вікна байти вже у page cache — писати нічого
+            if (window == null) fallback.commit(buf, position, bytes);
+        }
+
+        @Override
+        public void write(ByteBuffer src, long position) throws IOException {
+            while (src.hasRemaining()) {
+                ByteBuffer dst = buffer(position, src.remaining());
+                int n = dst.remaining();
+                dst.put(src.slice(src.position(), n));
+                commit(dst, position, n);
+                src.position(src.position() + n);
+                position += n;
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                retire();
+            } catch (UncheckedIOException ignored) {
+                // сторінки лишились у page cache: ядро допише їх саме
+                window = null;
+            }
+            if (fallback != null) fallback.close();
+            fallback = null;
+        }
+
+        // null — ліміт вичерпано
+        private MappedByteBuffer map(long position) throws IOException {
+            long size = Math.min(MAP_WINDOW_SIZE, totalBytes - position);
+            if (MAPPED_BYTES.addAndGet(size) > MAX_MAPPED_BYTES) {
+                MAPPED_BYTES.addAndGet(-size);
+                return null;
+            }
+
+            MappedByteBuffer w;
+            try {
+                w = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+            } catch (IOException | RuntimeException e) {
+                MAPPED_BYTES.addAndGet(-size);
+                throw e;
+            }
+            UNMAPPED.register(w, () -> MAPPED_BYTES.addAndGet(-size));
+            return w;
+        }
+
+        // пройдене вікно: брудні сторінки — на диск одразу, саме вікно розмапить GC
+        private void retire() {
+            if (window == null) return;
+            window.force();
+            window = null;
+        }
+    }
+}
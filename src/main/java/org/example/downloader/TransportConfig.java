@@ -0,0 +1,32 @@
+package org.example.downloader;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+/**
+ * Налаштування HTTP-транспорту.
+ * version — бажаний протокол: з HTTP_2 клієнт домовляється про HTTP/2 і відкочується
+ * на HTTP/1.1, якщо сервер його не вміє. maxConnectionsPerHost обмежує HTTP/1.1-з'єднання
+ * з одним хостом (на всі задачі разом); до HTTP/2-хоста Range-запити йдуть потоками
+ * одного з'єднання. executor — спільний для клієнта; null — спільний пул downloader-а.
+ */
+public record TransportConfig(
+        HttpClient.Version version,
+        Duration connectTimeout,
+        int maxConnectionsPerHost,
+        Executor executor
+) {
+
+    public TransportConfig {
+        if (version == null) version = HttpClient.Version.HTTP_2;
+        if (connectTimeout == null || connectTimeout.isNegative() || connectTimeout.isZero()) {
+            connectTimeout = Duration.ofSeconds(10);
+        }
+        maxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+    }
+
+    public static TransportConfig defaults() {
+        return new TransportConfig(HttpClient.Version.HTTP_2, Duration.ofSeconds(10), 6, null);
+    }
+}
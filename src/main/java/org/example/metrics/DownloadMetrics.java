@@ -0,0 +1,148 @@
+package org.example.metrics;
+
+import org.example.downloader.BufferPool;
+import org.example.model.DownloadSegment;
+import org.example.model.DownloadTask;
+import org.example.model.TaskSnapshot;
+import org.example.observer.DownloadObserver;
+import org.example.speed.SpeedControl;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Операційні показники менеджера через JMX (домен org.example.downloadmanager).
+ * Швидкості беруться зі знімків ProgressPublisher, тож рахуються там само, де й для UI;
+ * решту сюди повідомляють колбеки завантажувача і MeteredStorage.
+ */
+public class DownloadMetrics implements DownloadsMXBean, DownloadObserver {
+
+    public static final String DOMAIN = "org.example.downloadmanager";
+
+    private final IntSupplier activeCount;
+    private final IntSupplier queuedCount;
+    private final SpeedControl speed;
+    private final BufferPool bufferPool;
+
+    private final StorageMetrics storage = new StorageMetrics();
+    private final Map<Long, TaskMetrics> tasks = new ConcurrentHashMap<>();
+    private final LongAdder retries = new LongAdder();
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    public DownloadMetrics(IntSupplier activeCount, IntSupplier queuedCount,
+                           SpeedControl speed, BufferPool bufferPool) {
+        this.activeCount = activeCount;
+        this.queuedCount = queuedCount;
+        this.speed = speed;
+        this.bufferPool = bufferPool;
+    }
+
+    public StorageMetrics storage() {
+        return storage;
+    }
+
+    // ===== Реєстрація =====
+
+    public void register() {
+        register(name("type=Downloads"), this);
+        register(name("type=Storage"), storage);
+    }
+
+    public void unregister() {
+        tasks.keySet().forEach(this::taskFinished);
+        unregister(name("type=Downloads"));
+        unregister(name("type=Storage"));
+    }
+
+    private static ObjectName name(String props) {
+        try {
+            return new ObjectName(DOMAIN + ":" + props);
+        } catch (JMException e) {
+            throw new IllegalArgumentException(props, e);
+        }
+    }
+
+    private void register(ObjectName name, Object bean) {
+        try {
+            // ще один менеджер у тому ж процесі (тести, бенчмарки) — показуємо останній
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(bean, name);
+        } catch (JMException ignored) {
+            // без метрик завантаження працюють так само
+        }
+    }
+
+    private void unregister(ObjectName name) {
+        try {
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+        } catch (JMException ignored) {
+        }
+    }
+
+    // ===== Події від менеджера =====
+
+    public void taskStarted(DownloadTask task, List<DownloadSegment> segments) {
+        TaskMetrics m = new TaskMetrics(task, segments);
+        tasks.put(task.getId(), m);
+        register(name("type=Task,id=" + task.getId()), m);
+    }
+
+    public void taskFinished(long taskId) {
+        if (tasks.remove(taskId) != null) {
+            unregister(name("type=Task,id=" + taskId));
+        }
+    }
+
+    public void segmentFirstByte(long taskId, int segmentIndex, long nanos) {
+        TaskMetrics m = tasks.get(taskId);
+        if (m != null) m.firstByte(segmentIndex, nanos);
+    }
+
+    public void segmentRetry(long taskId) {
+        retries.increment();
+        TaskMetrics m = tasks.get(taskId);
+        if (m != null) m.retry();
+    }
+
+    @Override
+    public void onTaskChanged(DownloadTask task) {}
+
+    @Override
+    public void onProgress(List<TaskSnapshot> snapshots) {
+        for (TaskSnapshot s : snapshots) {
+            TaskMetrics m = tasks.get(s.id());
+            if (m != null) m.rate(s.bytesPerSec());
+        }
+    }
+
+    // ===== DownloadsMXBean =====
+
+    @Override public int getActiveCount() { return activeCount.getAsInt(); }
+    @Override public int getQueuedCount() { return queuedCount.getAsInt(); }
+
+    @Override
+    public double getBytesPerSec() {
+        return tasks.values().stream().mapToDouble(TaskMetrics::getBytesPerSec).sum();
+    }
+
+    @Override
+    public long getDownloadedBytes() {
+        return tasks.values().stream().mapToLong(TaskMetrics::getDownloadedBytes).sum();
+    }
+
+    @Override public long getRetries() { return retries.sum(); }
+    @Override public long getThrottleTimeMillis() { return speed.getThrottledNanos() / 1_000_000; }
+
+    @Override public long getBufferPoolCapacityBytes() { return bufferPool.getCapacityBytes(); }
+    @Override public long getBufferPoolInUseBytes() { return bufferPool.getInUseBytes(); }
+    @Override public int getBufferPoolWaitingCount() { return bufferPool.getWaitingCount(); }
+    @Override public long getBufferPoolWaitTimeMillis() { return bufferPool.getWaitNanosTotal() / 1_000_000; }
+}
@@ -0,0 +1,22 @@
+package org.example.metrics;
+
+/** Загальні показники менеджера: org.example.downloadmanager:type=Downloads */
+public interface DownloadsMXBean {
+
+    int getActiveCount();
+    int getQueuedCount();
+
+    // по активних задачах: сумарна швидкість і завантажені байти
+    double getBytesPerSec();
+    long getDownloadedBytes();
+
+    long getRetries();
+
+    // скільки сумарно чекали потоки (або відкладені запити) на ліміти швидкості
+    long getThrottleTimeMillis();
+
+    long getBufferPoolCapacityBytes();
+    long getBufferPoolInUseBytes();
+    int getBufferPoolWaitingCount();
+    long getBufferPoolWaitTimeMillis();
+}
@@ -0,0 +1,92 @@
+package org.example.metrics;
+
+import org.example.model.DownloadSegment;
+import org.example.model.DownloadStatus;
+import org.example.model.DownloadTask;
+import org.example.storage.LocalStorage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/** Обгортка над сховищем, що міряє кожен запис; читання проходять як є. */
+public class MeteredStorage implements LocalStorage {
+
+    private final LocalStorage delegate;
+    private final StorageMetrics metrics;
+
+    public MeteredStorage(LocalStorage delegate, StorageMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    private <T> T timed(Supplier<T> write) {
+        long started = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = write.get();
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(System.nanoTime() - started, failed);
+        }
+    }
+
+    private void timed(Runnable write) {
+        timed(() -> {
+            write.run();
+            return null;
+        });
+    }
+
+    // ===== Записи =====
+
+    @Override
+    public DownloadTask createTask(String url, String fileName) {
+        return timed(() -> delegate.createTask(url, fileName));
+    }
+
+    @Override
+    public void updateTask(DownloadTask task) {
+        timed(() -> delegate.updateTask(task));
+    }
+
+    @Override
+    public void saveSegments(long taskId, List<DownloadSegment> segments) {
+        timed(() -> delegate.saveSegments(taskId, segments));
+    }
+
+    @Override
+    public void updateSegment(DownloadSegment segment) {
+        timed(() -> delegate.updateSegment(segment));
+    }
+
+    @Override
+    public void saveProgress(DownloadTask task, List<DownloadSegment> segments, Map<Integer, byte[]> leafDigests) {
+        timed(() -> delegate.saveProgress(task, segments, leafDigests));
+    }
+
+    @Override
+    public void clearLeafDigests(long taskId) {
+        timed(() -> delegate.clearLeafDigests(taskId));
+    }
+
+    @Override
+    public void saveMirrors(long taskId, List<String> urls) {
+        timed(() -> delegate.saveMirrors(taskId, urls));
+    }
+
+    // ===== Читання =====
+
+    @Override public void init() { delegate.init(); }
+    @Override public Optional<DownloadTask> findTask(long taskId) { return delegate.findTask(taskId); }
+    @Override public List<DownloadSegment> loadSegments(long taskId) { return delegate.loadSegments(taskId); }
+    @Override public List<DownloadTask> loadAllTasks() { return delegate.loadAllTasks(); }
+    @Override public List<DownloadTask> loadTasksByStatus(Collection<DownloadStatus> statuses) { return delegate.loadTasksByStatus(statuses); }
+    @Override public List<DownloadTask> loadQueuedTasks() { return delegate.loadQueuedTasks(); }
+    @Override public Map<Integer, byte[]> loadLeafDigests(long taskId) { return delegate.loadLeafDigests(taskId); }
+    @Override public List<String> loadMirrors(long taskId) { return delegate.loadMirrors(taskId); }
+    @Override public void close() { delegate.close(); }
+}
@@ -0,0 +1,11 @@
+package org.example.metrics;
+
+// Стан сегмента для JMX; ttfbMillis — від запиту до першого байта тіла останньої спроби (-1, якщо ще не було)
+public record SegmentInfo(
+        int index,
+        long startByte,
+        long endByte,
+        long downloadedBytes,
+        String status,
+        double ttfbMillis
+) {}
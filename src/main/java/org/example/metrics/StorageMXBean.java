@@ -0,0 +1,17 @@
+package org.example.metrics;
+
+/** Записи в LocalStorage: org.example.downloadmanager:type=Storage */
+public interface StorageMXBean {
+
+    long getWriteCount();
+    long getWriteErrors();
+
+    // за останнє вікно (кілька секунд)
+    double getWritesPerSec();
+    double getRecentAverageWriteMillis();
+    double getRecentMaxWriteMillis();
+
+    // за весь час роботи
+    double getAverageWriteMillis();
+    double getMaxWriteMillis();
+}
@@ -0,0 +1,78 @@
+package org.example.metrics;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Латентність і частота записів у сховище.
+ * Записи рідкі (журнал скидає прогрес кілька разів на секунду),
+ * тож останнє вікно тримаємо просто чергою вимірів.
+ */
+public class StorageMetrics implements StorageMXBean {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    // пари (момент завершення, тривалість)
+    private final ArrayDeque<long[]> recent = new ArrayDeque<>();
+
+    private long count;
+    private long errors;
+    private long totalNanos;
+    private long maxNanos;
+
+    public synchronized void record(long nanos, boolean failed) {
+        long now = System.nanoTime();
+
+        count++;
+        if (failed) errors++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+
+        recent.addLast(new long[]{now, nanos});
+        trim(now);
+    }
+
+    private void trim(long now) {
+        while (!recent.isEmpty() && now - recent.peekFirst()[0] > WINDOW_NANOS) {
+            recent.pollFirst();
+        }
+    }
+
+    @Override public synchronized long getWriteCount() { return count; }
+    @Override public synchronized long getWriteErrors() { return errors; }
+
+    @Override
+    public synchronized double getWritesPerSec() {
+        trim(System.nanoTime());
+        return recent.size() * 1e9 / WINDOW_NANOS;
+    }
+
+    @Override
+    public synchronized double getRecentAverageWriteMillis() {
+        trim(System.nanoTime());
+        if (recent.isEmpty()) return 0;
+
+        long sum = 0;
+        for (long[] r : recent) sum += r[1];
+        return sum / 1e6 / recent.size();
+    }
+
+    @Override
+    public synchronized double getRecentMaxWriteMillis() {
+        trim(System.nanoTime());
+
+        long max = 0;
+        for (long[] r : recent) max = Math.max(max, r[1]);
+        return max / 1e6;
+    }
+
+    @Override
+    public synchronized double getAverageWriteMillis() {
+        return count == 0 ? 0 : totalNanos / 1e6 / count;
+    }
+
+    @Override
+    public synchronized double getMaxWriteMillis() {
+        return maxNanos / 1e6;
+    }
+}
@@ -0,0 +1,22 @@
+package org.example.metrics;
+
+import java.util.List;
+
+/** Активна задача: org.example.downloadmanager:type=Task,id=N */
+public interface TaskMXBean {
+
+    long getId();
+    String getFileName();
+    String getStatus();
+
+    long getTotalBytes();
+    long getDownloadedBytes();
+    double getBytesPerSec();
+
+    // від запуску задачі до першого байта даних; -1, поки даних не було
+    double getTimeToFirstByteMillis();
+
+    long getRetries();
+
+    List<SegmentInfo> getSegments();
+}
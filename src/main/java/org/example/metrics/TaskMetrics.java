@@ -0,0 +1,84 @@
+package org.example.metrics;
+
+import org.example.model.DownloadSegment;
+import org.example.model.DownloadTask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Показники однієї задачі, поки вона виконується. */
+public class TaskMetrics implements TaskMXBean {
+
+    // знімок прогресу старший за це — задача стоїть, швидкість 0
+    private static final long STALE_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final DownloadTask task;
+    private final List<DownloadSegment> segments;
+    private final long startedAt = System.nanoTime();
+
+    private final Map<Integer, Long> segmentTtfb = new ConcurrentHashMap<>();
+    private final LongAdder retries = new LongAdder();
+
+    private volatile long firstByteAt = -1;
+    private volatile double bytesPerSec;
+    private volatile long rateAt;
+
+    TaskMetrics(DownloadTask task, List<DownloadSegment> segments) {
+        this.task = task;
+        this.segments = segments;
+    }
+
+    void rate(double bytesPerSec) {
+        this.bytesPerSec = bytesPerSec;
+        this.rateAt = System.nanoTime();
+    }
+
+    void firstByte(int segmentIndex, long nanos) {
+        segmentTtfb.put(segmentIndex, nanos);
+        if (firstByteAt < 0) firstByteAt = System.nanoTime();
+    }
+
+    void retry() {
+        retries.increment();
+    }
+
+    @Override public long getId() { return task.getId(); }
+    @Override public String getFileName() { return task.getFileName(); }
+    @Override public String getStatus() { return task.getStatus().name(); }
+    @Override public long getTotalBytes() { return task.getTotalBytes(); }
+    @Override public long getDownloadedBytes() { return task.getDownloadedBytes(); }
+
+    @Override
+    public double getBytesPerSec() {
+        return System.nanoTime() - rateAt > STALE_NANOS ? 0 : bytesPerSec;
+    }
+
+    @Override
+    public double getTimeToFirstByteMillis() {
+        long at = firstByteAt;
+        return at < 0 ? -1 : (at - startedAt) / 1e6;
+    }
+
+    @Override public long getRetries() { return retries.sum(); }
+
+    @Override
+    public List<SegmentInfo> getSegments() {
+        List<SegmentInfo> list = new ArrayList<>();
+        for (DownloadSegment s : segments) {
+            Long ttfb = segmentTtfb.get(s.getIndex());
+            list.add(new SegmentInfo(
+                    s.getIndex(),
+                    s.getStartByte(),
+                    s.getEndByte(),
+                    s.getDownloadedBytes(),
+                    s.getStatus().name(),
+                    ttfb == null ? -1 : ttfb / 1e6
+            ));
+        }
+        return list;
+    }
+}
@@ -5,9 +5,9 @@ public class DownloadSegment {
     private long taskId;
     private int index;
     private long startByte;
-    private long endByte; // inclusive
-    private long downloadedBytes;
-    private SegmentStatus status;
+    private volatile long endByte; // inclusive; may shrink when the tail is split off
+    private volatile long downloadedBytes;
+    private volatile SegmentStatus status;
 
     public DownloadSegment(long id, long taskId, int index, long startByte, long endByte) {
         this.id = id;
@@ -27,6 +27,7 @@ public class DownloadSegment {
     public long getDownloadedBytes() { return downloadedBytes; }
     public SegmentStatus getStatus() { return status; }
 
+    public void setEndByte(long endByte) { this.endByte = endByte; }
     public void setDownloadedBytes(long downloadedBytes) { this.downloadedBytes = downloadedBytes; }
     public void setStatus(SegmentStatus status) { this.status = status; }
 
@@ -34,6 +35,10 @@ public class DownloadSegment {
         return (endByte - startByte + 1);
     }
 
+    public long getRemainingBytes() {
+        return Math.max(0, getLength() - downloadedBytes);
+    }
+
     public double getProgress01() {
         long len = getLength();
         if (len <= 0) return 0.0;
@@ -3,6 +3,7 @@ package org.example.model;
 
 public enum DownloadStatus {
     CREATED,
+    QUEUED,
     RUNNING,
     PAUSED,
     COMPLETED,
@@ -8,6 +8,9 @@ public class DownloadTask {
     private DownloadStatus status;
     private long totalBytes;
     private long downloadedBytes;
+    private int priority;
+    private long queueSeq; // порядок постановки в чергу (FIFO серед однакових пріоритетів)
+    private String expectedDigest; // очікуваний tree-sha256 (hex) або null
 
     public DownloadTask(long id, String url, String fileName) {
         this.id = id;
@@ -16,6 +19,8 @@ public class DownloadTask {
         this.status = DownloadStatus.CREATED;
         this.totalBytes = -1;
         this.downloadedBytes = 0;
+        this.priority = 0;
+        this.queueSeq = 0;
     }
 
     public long getId() { return id; }
@@ -24,10 +29,16 @@ public class DownloadTask {
     public DownloadStatus getStatus() { return status; }
     public long getTotalBytes() { return totalBytes; }
     public long getDownloadedBytes() { return downloadedBytes; }
+    public int getPriority() { return priority; }
+    public long getQueueSeq() { return queueSeq; }
+    public String getExpectedDigest() { return expectedDigest; }
 
     public void setStatus(DownloadStatus status) { this.status = status; }
     public void setTotalBytes(long totalBytes) { this.totalBytes = totalBytes; }
     public void setDownloadedBytes(long downloadedBytes) { this.downloadedBytes = downloadedBytes; }
+    public void setPriority(int priority) { this.priority = priority; }
+    public void setQueueSeq(long queueSeq) { this.queueSeq = queueSeq; }
+    public void setExpectedDigest(String expectedDigest) { this.expectedDigest = expectedDigest; }
 
     public double getProgress01() {
         if (totalBytes <= 0) return 0.0;
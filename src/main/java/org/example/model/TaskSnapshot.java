@@ -0,0 +1,28 @@
+package org.example.model;
+
+// Незмінний знімок стану задачі для спостерігачів (безпечно передавати між потоками)
+public record TaskSnapshot(
+        long id,
+        String fileName,
+        DownloadStatus status,
+        long totalBytes,
+        long downloadedBytes,
+        double bytesPerSec
+) {
+
+    public static TaskSnapshot of(DownloadTask t, double bytesPerSec) {
+        return new TaskSnapshot(
+                t.getId(),
+                t.getFileName(),
+                t.getStatus(),
+                t.getTotalBytes(),
+                t.getDownloadedBytes(),
+                bytesPerSec
+        );
+    }
+
+    public double progress01() {
+        if (totalBytes <= 0) return 0.0;
+        return Math.min(1.0, (double) downloadedBytes / (double) totalBytes);
+    }
+}
@@ -2,6 +2,9 @@ package org.example.observer;
 
 
 import org.example.model.DownloadTask;
+import org.example.model.TaskSnapshot;
+
+import java.util.List;
 
 public class ConsoleDownloadObserver implements DownloadObserver {
 
@@ -15,6 +18,18 @@ public class ConsoleDownloadObserver implements DownloadObserver {
         );
     }
 
+    @Override
+    public void onProgress(List<TaskSnapshot> snapshots) {
+        for (TaskSnapshot s : snapshots) {
+            System.out.printf(
+                    "[ConsoleObserver] task=%d progress=%.2f%% speed=%.2f MB/s%n",
+                    s.id(),
+                    s.progress01() * 100.0,
+                    s.bytesPerSec() / (1024 * 1024)
+            );
+        }
+    }
+
     @Override
     public void onLog(String message) {
         System.out.println("[ConsoleObserver] " + message);
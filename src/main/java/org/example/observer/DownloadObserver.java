@@ -2,8 +2,16 @@
 package org.example.observer;
 
 import  org.example.model.DownloadTask;
+import org.example.model.TaskSnapshot;
+
+import java.util.List;
 
 public interface DownloadObserver {
+    // зміни стану (старт, пауза, завершення, помилка) — одразу і без пропусків
     void onTaskChanged(DownloadTask task);
+
+    // прогрес активних задач — пачкою, з обмеженою частотою
+    default void onProgress(List<TaskSnapshot> snapshots) {}
+
     default void onLog(String message) {}
 }
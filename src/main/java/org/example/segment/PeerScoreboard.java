@@ -0,0 +1,117 @@
+package org.example.segment;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Оцінки дзеркал в межах одного завантаження.
+ * Кожен новий діапазон віддається дзеркалу випадково, з вагою його пропускної здатності,
+ * тож швидші дзеркала отримують більше діапазонів. Після помилки дзеркало
+ * "лавочиться" на час, що подвоюється з кожною помилкою поспіль.
+ */
+public class PeerScoreboard {
+
+    // з цією швидкістю (байт/с) стартує кожне дзеркало, поки немає вимірів
+    private static final double INITIAL_RATE = 1024 * 1024;
+    private static final double EWMA_ALPHA = 0.3;
+    // дзеркало, повільніше за цю частку від найкращого, вважається повільним
+    private static final double SLOW_FRACTION = 0.2;
+    private static final long BASE_PENALTY_MS = 2000;
+    private static final long MAX_PENALTY_MS = 60_000;
+
+    private final Map<String, Stats> stats = new LinkedHashMap<>();
+    private final Map<String, Peer> peers = new LinkedHashMap<>();
+
+    public PeerScoreboard(List<Peer> peers) {
+        for (Peer p : peers) {
+            this.peers.put(p.getId(), p);
+            this.stats.put(p.getId(), new Stats());
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return peers.isEmpty();
+    }
+
+    public synchronized int size() {
+        return peers.size();
+    }
+
+    /** Дзеркало для наступного діапазону; {@code exclude} — те, що щойно підвело. */
+    public synchronized Peer pick(Peer exclude) {
+        long now = System.currentTimeMillis();
+
+        List<Peer> candidates = new ArrayList<>();
+        for (Peer p : peers.values()) {
+            if (p == exclude && peers.size() > 1) continue;
+            if (stats.get(p.getId()).benchedUntil <= now) candidates.add(p);
+        }
+
+        // усі на лавці — беремо того, хто звільниться найраніше
+        if (candidates.isEmpty()) {
+            Peer soonest = null;
+            for (Peer p : peers.values()) {
+                if (p == exclude && peers.size() > 1) continue;
+                if (soonest == null ||
+                        stats.get(p.getId()).benchedUntil < stats.get(soonest.getId()).benchedUntil) {
+                    soonest = p;
+                }
+            }
+            return soonest;
+        }
+
+        double best = candidates.stream().mapToDouble(p -> stats.get(p.getId()).rate).max().orElse(0);
+
+        double total = 0;
+        double[] weights = new double[candidates.size()];
+        for (int i = 0; i < candidates.size(); i++) {
+            double rate = stats.get(candidates.get(i).getId()).rate;
+            // повільні дзеркала не вимикаємо зовсім, щоб вони могли реабілітуватись
+            weights[i] = rate < best * SLOW_FRACTION ? rate * 0.1 : rate;
+            total += weights[i];
+        }
+
+        double r = ThreadLocalRandom.current().nextDouble(total);
+        for (int i = 0; i < weights.length; i++) {
+            r -= weights[i];
+            if (r < 0) return candidates.get(i);
+        }
+        return candidates.get(candidates.size() - 1);
+    }
+
+    public synchronized void recordSuccess(Peer peer, long bytes, long nanos) {
+        Stats s = stats.get(peer.getId());
+        if (s == null || bytes <= 0 || nanos <= 0) return;
+
+        double rate = bytes * 1_000_000_000.0 / nanos;
+        s.rate = s.measured ? EWMA_ALPHA * rate + (1 - EWMA_ALPHA) * s.rate : rate;
+        s.measured = true;
+        s.failuresInRow = 0;
+    }
+
+    public synchronized void recordFailure(Peer peer) {
+        Stats s = stats.get(peer.getId());
+        if (s == null) return;
+
+        s.failuresInRow++;
+        s.rate = Math.max(1, s.rate / 2);
+
+        long penalty = Math.min(MAX_PENALTY_MS, BASE_PENALTY_MS << Math.min(10, s.failuresInRow - 1));
+        s.benchedUntil = System.currentTimeMillis() + penalty;
+    }
+
+    public synchronized double getRate(Peer peer) {
+        Stats s = stats.get(peer.getId());
+        return s == null ? 0 : s.rate;
+    }
+
+    private static class Stats {
+        double rate = INITIAL_RATE;
+        boolean measured;
+        int failuresInRow;
+        long benchedUntil;
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.segment;
+
+import org.example.digest.ContentDigest;
+import org.example.model.DownloadSegment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Розбиває файл на сегменти залежно від його розміру
+public class SegmentPlanner {
+
+    private final long minSegmentSize;
+    private final long maxSegmentSize;
+    private final int maxConnections;
+
+    public SegmentPlanner(long minSegmentSize, long maxSegmentSize, int maxConnections) {
+        this.minSegmentSize = Math.max(1, minSegmentSize);
+        this.maxSegmentSize = Math.max(this.minSegmentSize, maxSegmentSize);
+        this.maxConnections = Math.max(1, maxConnections);
+    }
+
+    /**
+     * Малий файл (менше двох мінімальних сегментів) — один сегмент і один запит.
+     * Інакше сегментів стільки, скільки дозволяють з'єднання, але не менших за мінімум;
+     * якщо сегменти виходять більшими за максимум — ріжемо дрібніше, а зайві сегменти
+     * просто чекають вільного з'єднання.
+     */
+    public int segmentCount(long total) {
+        if (total <= 0) return 0;
+
+        long byMin = total / minSegmentSize;
+        long count = Math.max(1, Math.min(maxConnections, byMin));
+
+        long byMax = (total + maxSegmentSize - 1) / maxSegmentSize;
+        count = Math.max(count, byMax);
+
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    public List<DownloadSegment> plan(long taskId, long total) {
+        int count = segmentCount(total);
+        List<DownloadSegment> list = new ArrayList<>();
+        if (count == 0) return list;
+
+        // межі кратні листку tree-sha256, щоб кожен листок хешував один воркер
+        long part = total / count;
+        if (part >= ContentDigest.LEAF_SIZE) part -= part % ContentDigest.LEAF_SIZE;
+        long start = 0;
+
+        for (int i = 0; i < count; i++) {
+            long end = (i == count - 1) ? total - 1 : start + part - 1;
+            list.add(new DownloadSegment(0, taskId, i, start, end));
+            start = end + 1;
+        }
+        return list;
+    }
+
+    public int getMaxConnections() { return maxConnections; }
+}
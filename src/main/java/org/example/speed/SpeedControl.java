@@ -1,30 +1,118 @@
-
 package org.example.speed;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Обмеження швидкості на трьох рівнях: глобально, на задачу і на хост.
+ * Кожен прочитаний шматок списується з усіх трьох бакетів, а чекати
+ * доводиться стільки, скільки вимагає найсуворіший з них.
+ */
 public class SpeedControl {
 
-    private volatile long maxBytesPerSec;
+    // скільки мілісекунд повної швидкості можна "накопичити" на сплеск
+    private static final long DEFAULT_BURST_MS = 250;
+    private static final long MIN_BURST_BYTES = 64 * 1024;
+
+    private final TokenBucket global;
+    private final Map<Long, TokenBucket> perTask = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> perHost = new ConcurrentHashMap<>();
+
+    private volatile long burstMs = DEFAULT_BURST_MS;
+
+    // сумарне чекання, призначене лімітами (для метрик)
+    private final LongAdder throttledNanos = new LongAdder();
 
     public SpeedControl(long maxBytesPerSec) {
-        this.maxBytesPerSec = maxBytesPerSec;
+        this.global = new TokenBucket(maxBytesPerSec, burstFor(maxBytesPerSec));
+    }
+
+    public long getMaxBytesPerSec() { return global.getBytesPerSec(); }
+
+    public void setMaxBytesPerSec(long maxBytesPerSec) {
+        global.setRate(maxBytesPerSec, burstFor(maxBytesPerSec));
+    }
+
+    public void setTaskLimit(long taskId, long bytesPerSec) {
+        if (bytesPerSec <= 0) {
+            perTask.remove(taskId);
+            return;
+        }
+        perTask.computeIfAbsent(taskId, id -> new TokenBucket(bytesPerSec, burstFor(bytesPerSec)))
+                .setRate(bytesPerSec, burstFor(bytesPerSec));
+    }
+
+    public void setHostLimit(String host, long bytesPerSec) {
+        if (bytesPerSec <= 0) {
+            perHost.remove(host);
+            return;
+        }
+        perHost.computeIfAbsent(host, h -> new TokenBucket(bytesPerSec, burstFor(bytesPerSec)))
+                .setRate(bytesPerSec, burstFor(bytesPerSec));
+    }
+
+    public void clearTask(long taskId) {
+        perTask.remove(taskId);
     }
 
-    public long getMaxBytesPerSec() { return maxBytesPerSec; }
-    public void setMaxBytesPerSec(long maxBytesPerSec) { this.maxBytesPerSec = maxBytesPerSec; }
+    public void setBurstMillis(long burstMs) {
+        this.burstMs = Math.max(1, burstMs);
+        global.setRate(global.getBytesPerSec(), burstFor(global.getBytesPerSec()));
+        perTask.values().forEach(b -> b.setRate(b.getBytesPerSec(), burstFor(b.getBytesPerSec())));
+        perHost.values().forEach(b -> b.setRate(b.getBytesPerSec(), burstFor(b.getBytesPerSec())));
+    }
 
+    /** Лише глобальний ліміт. */
     public void throttle(int bytesJustProcessed) {
-        long limit = maxBytesPerSec;
-        if (limit <= 0) return;
-
-        // naive throttling: delay proportional to bytes chunk
-        // delayMillis = bytes / (bytes/sec) * 1000
-        double delayMs = (bytesJustProcessed * 1000.0) / limit;
-        if (delayMs <= 1.0) return;
-
-        try {
-            Thread.sleep((long) delayMs);
-        } catch (InterruptedException ignored) {
-            Thread.currentThread().interrupt();
+        long wait = global.reserve(bytesJustProcessed);
+        if (wait > 0) throttledNanos.add(wait);
+        pause(wait);
+    }
+
+    /**
+     * Блокуюче списання для викликачів без задачі. Завантаження списують через
+     * {@link #reserve} і чекають у DownloadControl задачі, щоб пауза і скасування
+     * не чекали, доки спливе весь борг.
+     */
+    public void throttle(long taskId, String host, int bytesJustProcessed) {
+        pause(reserve(taskId, host, bytesJustProcessed));
+    }
+
+    /**
+     * Списує байти з усіх бакетів і повертає, скільки наносекунд треба почекати,
+     * нічого не блокуючи — для асинхронного читання, де чекання означає
+     * відкладений запит наступної порції даних.
+     */
+    public long reserve(long taskId, String host, int bytesJustProcessed) {
+        long wait = global.reserve(bytesJustProcessed);
+
+        TokenBucket task = perTask.get(taskId);
+        if (task != null) wait = Math.max(wait, task.reserve(bytesJustProcessed));
+
+        TokenBucket hostBucket = host == null ? null : perHost.get(host);
+        if (hostBucket != null) wait = Math.max(wait, hostBucket.reserve(bytesJustProcessed));
+
+        if (wait > 0) throttledNanos.add(wait);
+        return wait;
+    }
+
+    public long getThrottledNanos() {
+        return throttledNanos.sum();
+    }
+
+    private long burstFor(long bytesPerSec) {
+        if (bytesPerSec <= 0) return MIN_BURST_BYTES;
+        return Math.max(MIN_BURST_BYTES, bytesPerSec * burstMs / 1000);
+    }
+
+    private static void pause(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        while (nanos > 0) {
+            LockSupport.parkNanos(nanos);
+            if (Thread.currentThread().isInterrupted()) return;
+            nanos = deadline - System.nanoTime();
         }
     }
 }
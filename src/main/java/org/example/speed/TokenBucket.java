@@ -0,0 +1,70 @@
+package org.example.speed;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket з резервуванням.
+ * Кожен виклик одразу списує свої байти, навіть у борг; борг визначає,
+ * скільки цьому викликачу треба почекати. Наступні викликачі стають у чергу
+ * за боргом, тому потоки, що ділять бакет, отримують смугу по черзі (fair lock).
+ */
+public class TokenBucket {
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    private volatile long bytesPerSec;
+    private long burstBytes;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(long bytesPerSec, long burstBytes) {
+        this.lastRefillNanos = System.nanoTime();
+        this.bytesPerSec = bytesPerSec;
+        this.burstBytes = Math.max(1, burstBytes);
+    }
+
+    public long getBytesPerSec() { return bytesPerSec; }
+
+    public boolean isUnlimited() { return bytesPerSec <= 0; }
+
+    public void setRate(long bytesPerSec, long burstBytes) {
+        lock.lock();
+        try {
+            refill(System.nanoTime()); // накопичене за старою швидкістю
+            this.bytesPerSec = bytesPerSec;
+            this.burstBytes = Math.max(1, burstBytes);
+            tokens = Math.min(tokens, this.burstBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Списує {@code bytes} і повертає, скільки наносекунд треба почекати. */
+    public long reserve(int bytes) {
+        if (bytesPerSec <= 0) return 0;
+
+        lock.lock();
+        try {
+            long rate = bytesPerSec;
+            if (rate <= 0) return 0;
+
+            refill(System.nanoTime());
+            tokens -= bytes;
+            if (tokens >= 0) return 0;
+
+            return (long) (-tokens * 1_000_000_000.0 / rate);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefillNanos;
+        lastRefillNanos = now;
+        long rate = bytesPerSec;
+        if (rate <= 0 || elapsed <= 0) return;
+
+        tokens = Math.min(burstBytes, tokens + elapsed * rate / 1_000_000_000.0);
+    }
+}
@@ -1,9 +1,12 @@
 package org.example.storage;
 
 import org.example.model.DownloadSegment;
+import org.example.model.DownloadStatus;
 import org.example.model.DownloadTask;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface LocalStorage {
@@ -22,5 +25,26 @@ public interface LocalStorage {
 
     List<DownloadSegment> loadSegments(long taskId);
     List<DownloadTask> loadAllTasks();
+    List<DownloadTask> loadTasksByStatus(Collection<DownloadStatus> statuses);
+
+    // черга завантажень: за пріоритетом (спадання), далі FIFO
+    List<DownloadTask> loadQueuedTasks();
     void updateSegment(DownloadSegment segment);
+
+    // прогрес задачі та її сегментів однією транзакцією
+    default void saveProgress(DownloadTask task, List<DownloadSegment> segments) {
+        saveProgress(task, segments, Map.of());
+    }
+
+    // те саме разом з новими дайджестами листків tree-sha256 (індекс листка -> SHA-256)
+    void saveProgress(DownloadTask task, List<DownloadSegment> segments, Map<Integer, byte[]> leafDigests);
+
+    Map<Integer, byte[]> loadLeafDigests(long taskId);
+    void clearLeafDigests(long taskId);
+
+    // додаткові дзеркала того самого файлу (основний URL задачі сюди не входить)
+    void saveMirrors(long taskId, List<String> urls);
+    List<String> loadMirrors(long taskId);
+
+    default void close() {}
 }
@@ -7,7 +7,11 @@ import org.example.model.SegmentStatus;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 
@@ -15,59 +19,161 @@ public class SQLiteStorage implements LocalStorage {
 
     private final String dbUrl;
 
+    // одне довготривале з'єднання на весь застосунок;
+    // усі публічні методи synchronized, тож потоки завантаження його не ділять одночасно
+    private Connection connection;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
     public SQLiteStorage(String filePath) {
         // Example: "jdbc:sqlite:downloadmanager.db"
         this.dbUrl = "jdbc:sqlite:" + filePath;
     }
 
     private Connection connect() throws SQLException {
-        return DriverManager.getConnection(dbUrl);
+        if (connection != null && !connection.isClosed()) return connection;
+
+        connection = DriverManager.getConnection(dbUrl);
+        statements.clear();
+
+        try (Statement st = connection.createStatement()) {
+            st.execute("PRAGMA journal_mode=WAL");
+            // у WAL-режимі NORMAL не робить fsync на кожен коміт, лише на checkpoint
+            st.execute("PRAGMA synchronous=NORMAL");
+            st.execute("PRAGMA busy_timeout=5000");
+        }
+        return connection;
+    }
+
+    private PreparedStatement prepare(String sql) throws SQLException {
+        return prepare(sql, false);
     }
 
+    private PreparedStatement prepare(String sql, boolean generatedKeys) throws SQLException {
+        PreparedStatement ps = statements.get(sql);
+        if (ps == null) {
+            ps = generatedKeys
+                    ? connect().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                    : connect().prepareStatement(sql);
+            statements.put(sql, ps);
+        }
+        return ps;
+    }
+
+    private void rollbackQuietly(Connection c) {
+        try {
+            c.rollback();
+        } catch (SQLException ignored) {}
+    }
+
+    private void restoreAutoCommit(Connection c) {
+        try {
+            c.setAutoCommit(true);
+        } catch (SQLException ignored) {}
+    }
+
+    // Міграції схеми: елемент i переводить базу з версії i на i + 1.
+    // Поточна версія зберігається в PRAGMA user_version; нові кроки додавати лише в кінець.
+    private static final List<List<String>> MIGRATIONS = List.of(
+            List.of(
+                    """
+                    CREATE TABLE IF NOT EXISTS download_tasks (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        url TEXT NOT NULL,
+                        file_name TEXT NOT NULL,
+                        status TEXT NOT NULL,
+                        total_bytes INTEGER,
+                        downloaded_bytes INTEGER
+                    )
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS download_segments (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        task_id INTEGER NOT NULL,
+                        seg_index INTEGER NOT NULL,
+                        start_byte INTEGER NOT NULL,
+                        end_byte INTEGER NOT NULL,
+                        downloaded_bytes INTEGER NOT NULL,
+                        status TEXT NOT NULL,
+                        FOREIGN KEY(task_id) REFERENCES download_tasks(id)
+                    )
+                    """
+            ),
+            List.of(
+                    "CREATE INDEX IF NOT EXISTS idx_segments_task_index ON download_segments(task_id, seg_index)",
+                    "CREATE INDEX IF NOT EXISTS idx_tasks_status ON download_tasks(status)"
+            ),
+            List.of(
+                    "ALTER TABLE download_tasks ADD COLUMN priority INTEGER NOT NULL DEFAULT 0",
+                    "ALTER TABLE download_tasks ADD COLUMN queue_seq INTEGER NOT NULL DEFAULT 0",
+                    "CREATE INDEX IF NOT EXISTS idx_tasks_queue ON download_tasks(status, priority, queue_seq)"
+            ),
+            List.of(
+                    """
+                    CREATE TABLE IF NOT EXISTS download_mirrors (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        task_id INTEGER NOT NULL,
+                        url TEXT NOT NULL,
+                        FOREIGN KEY(task_id) REFERENCES download_tasks(id)
+                    )
+                    """,
+                    "CREATE INDEX IF NOT EXISTS idx_mirrors_task ON download_mirrors(task_id)"
+            ),
+            List.of(
+                    "ALTER TABLE download_tasks ADD COLUMN expected_digest TEXT",
+                    """
+                    CREATE TABLE IF NOT EXISTS download_digests (
+                        task_id INTEGER NOT NULL,
+                        leaf_index INTEGER NOT NULL,
+                        digest BLOB NOT NULL,
+                        PRIMARY KEY(task_id, leaf_index),
+                        FOREIGN KEY(task_id) REFERENCES download_tasks(id)
+                    )
+                    """
+            )
+    );
+
     @Override
-    public void init() {
-        try (Connection c = connect();
-             Statement st = c.createStatement()) {
-
-            st.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS download_tasks (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    url TEXT NOT NULL,
-                    file_name TEXT NOT NULL,
-                    status TEXT NOT NULL,
-                    total_bytes INTEGER,
-                    downloaded_bytes INTEGER
-                )
-            """);
-
-            st.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS download_segments (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    task_id INTEGER NOT NULL,
-                    seg_index INTEGER NOT NULL,
-                    start_byte INTEGER NOT NULL,
-                    end_byte INTEGER NOT NULL,
-                    downloaded_bytes INTEGER NOT NULL,
-                    status TEXT NOT NULL,
-                    FOREIGN KEY(task_id) REFERENCES download_tasks(id)
-                )
-            """);
+    public synchronized void init() {
+        Connection c = null;
+        try {
+            c = connect();
+
+            int version;
+            try (Statement st = c.createStatement();
+                 ResultSet rs = st.executeQuery("PRAGMA user_version")) {
+                version = rs.next() ? rs.getInt(1) : 0;
+            }
+
+            for (int v = version; v < MIGRATIONS.size(); v++) {
+                c.setAutoCommit(false);
+                try (Statement st = c.createStatement()) {
+                    for (String sql : MIGRATIONS.get(v)) {
+                        st.executeUpdate(sql);
+                    }
+                    st.executeUpdate("PRAGMA user_version = " + (v + 1));
+                }
+                c.commit();
+                c.setAutoCommit(true);
+            }
 
         } catch (SQLException e) {
+            if (c != null) rollbackQuietly(c);
             throw new RuntimeException("SQLite init failed", e);
+        } finally {
+            if (c != null) restoreAutoCommit(c);
         }
     }
 
     @Override
-    public DownloadTask createTask(String url, String fileName) {
+    public synchronized DownloadTask createTask(String url, String fileName) {
         String sql = """
             INSERT INTO download_tasks
             (url, file_name, status, total_bytes, downloaded_bytes)
             VALUES (?, ?, ?, ?, ?)
         """;
 
-        try (Connection c = connect();
-             PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try {
+            PreparedStatement ps = prepare(sql, true);
 
             ps.setString(1, url);
             ps.setString(2, fileName);
@@ -91,60 +197,38 @@ public class SQLiteStorage implements LocalStorage {
     }
 
     @Override
-    public Optional<DownloadTask> findTask(long taskId) {
+    public synchronized Optional<DownloadTask> findTask(long taskId) {
         String sql = """
-            SELECT id, url, file_name, status, total_bytes, downloaded_bytes
+            SELECT id, url, file_name, status, total_bytes, downloaded_bytes, priority, queue_seq, expected_digest
             FROM download_tasks WHERE id = ?
         """;
 
-        try (Connection c = connect();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-
+        try {
+            PreparedStatement ps = prepare(sql);
             ps.setLong(1, taskId);
 
             try (ResultSet rs = ps.executeQuery()) {
                 if (!rs.next()) return Optional.empty();
-
-                DownloadTask task = new DownloadTask(
-                        rs.getLong("id"),
-                        rs.getString("url"),
-                        rs.getString("file_name")
-                );
-
-                task.setStatus(DownloadStatus.valueOf(rs.getString("status")));
-                task.setTotalBytes(rs.getLong("total_bytes"));
-                task.setDownloadedBytes(rs.getLong("downloaded_bytes"));
-
-                return Optional.of(task);
+                return Optional.of(readTask(rs));
             }
 
         } catch (SQLException e) {
             throw new RuntimeException("SQLite findTask failed", e);
         }
     }
+
     @Override
-    public List<DownloadTask> loadAllTasks() {
+    public synchronized List<DownloadTask> loadAllTasks() {
         String sql = """
-        SELECT id, url, file_name, status, total_bytes, downloaded_bytes
+        SELECT id, url, file_name, status, total_bytes, downloaded_bytes, priority, queue_seq, expected_digest
         FROM download_tasks
     """;
 
         List<DownloadTask> list = new ArrayList<>();
 
-        try (Connection c = connect();
-             PreparedStatement ps = c.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-
+        try (ResultSet rs = prepare(sql).executeQuery()) {
             while (rs.next()) {
-                DownloadTask t = new DownloadTask(
-                        rs.getLong("id"),
-                        rs.getString("url"),
-                        rs.getString("file_name")
-                );
-                t.setStatus(DownloadStatus.valueOf(rs.getString("status")));
-                t.setTotalBytes(rs.getLong("total_bytes"));
-                t.setDownloadedBytes(rs.getLong("downloaded_bytes"));
-                list.add(t);
+                list.add(readTask(rs));
             }
 
         } catch (SQLException e) {
@@ -154,68 +238,163 @@ public class SQLiteStorage implements LocalStorage {
         return list;
     }
 
+    @Override
+    public synchronized List<DownloadTask> loadTasksByStatus(Collection<DownloadStatus> statuses) {
+        List<DownloadTask> list = new ArrayList<>();
+        if (statuses.isEmpty()) return list;
+
+        String sql = """
+        SELECT id, url, file_name, status, total_bytes, downloaded_bytes, priority, queue_seq, expected_digest
+        FROM download_tasks
+        WHERE status IN (%s)
+        ORDER BY id
+    """.formatted(String.join(", ", Collections.nCopies(statuses.size(), "?")));
+
+        try {
+            PreparedStatement ps = prepare(sql);
+            int i = 1;
+            for (DownloadStatus st : statuses) {
+                ps.setString(i++, st.name());
+            }
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    list.add(readTask(rs));
+                }
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("SQLite loadTasksByStatus failed", e);
+        }
+
+        return list;
+    }
 
     @Override
-    public void updateTask(DownloadTask task) {
+    public synchronized List<DownloadTask> loadQueuedTasks() {
         String sql = """
+        SELECT id, url, file_name, status, total_bytes, downloaded_bytes, priority, queue_seq, expected_digest
+        FROM download_tasks
+        WHERE status = ?
+        ORDER BY priority DESC, queue_seq
+    """;
+
+        List<DownloadTask> list = new ArrayList<>();
+
+        try {
+            PreparedStatement ps = prepare(sql);
+            ps.setString(1, DownloadStatus.QUEUED.name());
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    list.add(readTask(rs));
+                }
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("SQLite loadQueuedTasks failed", e);
+        }
+
+        return list;
+    }
+
+    private DownloadTask readTask(ResultSet rs) throws SQLException {
+        DownloadTask t = new DownloadTask(
+                rs.getLong("id"),
+                rs.getString("url"),
+                rs.getString("file_name")
+        );
+        t.setStatus(DownloadStatus.valueOf(rs.getString("status")));
+        t.setTotalBytes(rs.getLong("total_bytes"));
+        t.setDownloadedBytes(rs.getLong("downloaded_bytes"));
+        t.setPriority(rs.getInt("priority"));
+        t.setQueueSeq(rs.getLong("queue_seq"));
+        t.setExpectedDigest(rs.getString("expected_digest"));
+        return t;
+    }
+
+    private static final String UPDATE_TASK_SQL = """
             UPDATE download_tasks
-            SET status = ?, total_bytes = ?, downloaded_bytes = ?
+            SET status = ?, total_bytes = ?, downloaded_bytes = ?, priority = ?, queue_seq = ?,
+                expected_digest = ?
             WHERE id = ?
         """;
 
-        try (Connection c = connect();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-
-            ps.setString(1, task.getStatus().name());
-            ps.setLong(2, task.getTotalBytes());
-            ps.setLong(3, task.getDownloadedBytes());
-            ps.setLong(4, task.getId());
-            ps.executeUpdate();
+    private static final String UPDATE_SEGMENT_SQL = """
+            UPDATE download_segments
+            SET downloaded_bytes = ?, status = ?
+            WHERE task_id = ? AND seg_index = ?
+        """;
 
+    @Override
+    public synchronized void updateTask(DownloadTask task) {
+        try {
+            bindTask(prepare(UPDATE_TASK_SQL), task).executeUpdate();
         } catch (SQLException e) {
             throw new RuntimeException("SQLite updateTask failed", e);
         }
     }
 
-    @Override
-    public void saveSegments(long taskId, List<DownloadSegment> segments) {
-        try (Connection c = connect()) {
-            c.setAutoCommit(false);
+    private PreparedStatement bindTask(PreparedStatement ps, DownloadTask task) throws SQLException {
+        ps.setString(1, task.getStatus().name());
+        ps.setLong(2, task.getTotalBytes());
+        ps.setLong(3, task.getDownloadedBytes());
+        ps.setInt(4, task.getPriority());
+        ps.setLong(5, task.getQueueSeq());
+        ps.setString(6, task.getExpectedDigest());
+        ps.setLong(7, task.getId());
+        return ps;
+    }
 
-            try (PreparedStatement del =
-                         c.prepareStatement("DELETE FROM download_segments WHERE task_id = ?")) {
-                del.setLong(1, taskId);
-                del.executeUpdate();
-            }
+    private PreparedStatement bindSegment(PreparedStatement ps, long taskId, DownloadSegment s) throws SQLException {
+        ps.setLong(1, s.getDownloadedBytes());
+        ps.setString(2, s.getStatus().name());
+        ps.setLong(3, taskId);
+        ps.setInt(4, s.getIndex());
+        return ps;
+    }
 
-            String insertSql = """
+    @Override
+    public synchronized void saveSegments(long taskId, List<DownloadSegment> segments) {
+        String insertSql = """
                 INSERT INTO download_segments
                 (task_id, seg_index, start_byte, end_byte, downloaded_bytes, status)
                 VALUES (?, ?, ?, ?, ?, ?)
             """;
 
-            try (PreparedStatement ps = c.prepareStatement(insertSql)) {
-                for (DownloadSegment s : segments) {
-                    ps.setLong(1, taskId);
-                    ps.setInt(2, s.getIndex());
-                    ps.setLong(3, s.getStartByte());
-                    ps.setLong(4, s.getEndByte());
-                    ps.setLong(5, s.getDownloadedBytes());
-                    ps.setString(6, s.getStatus().name());
-                    ps.addBatch();
-                }
-                ps.executeBatch();
+        Connection c = null;
+        try {
+            c = connect();
+            c.setAutoCommit(false);
+
+            PreparedStatement del = prepare("DELETE FROM download_segments WHERE task_id = ?");
+            del.setLong(1, taskId);
+            del.executeUpdate();
+
+            PreparedStatement ps = prepare(insertSql);
+            for (DownloadSegment s : segments) {
+                ps.setLong(1, taskId);
+                ps.setInt(2, s.getIndex());
+                ps.setLong(3, s.getStartByte());
+                ps.setLong(4, s.getEndByte());
+                ps.setLong(5, s.getDownloadedBytes());
+                ps.setString(6, s.getStatus().name());
+                ps.addBatch();
             }
+            ps.executeBatch();
 
             c.commit();
 
         } catch (SQLException e) {
+            if (c != null) rollbackQuietly(c);
             throw new RuntimeException("SQLite saveSegments failed", e);
+        } finally {
+            if (c != null) restoreAutoCommit(c);
         }
     }
 
     @Override
-    public List<DownloadSegment> loadSegments(long taskId) {
+    public synchronized List<DownloadSegment> loadSegments(long taskId) {
         String sql = """
             SELECT id, seg_index, start_byte, end_byte, downloaded_bytes, status
             FROM download_segments
@@ -225,9 +404,8 @@ public class SQLiteStorage implements LocalStorage {
 
         List<DownloadSegment> result = new ArrayList<>();
 
-        try (Connection c = connect();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-
+        try {
+            PreparedStatement ps = prepare(sql);
             ps.setLong(1, taskId);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -253,23 +431,147 @@ public class SQLiteStorage implements LocalStorage {
     }
 
     @Override
-    public void updateSegment(DownloadSegment segment) {
-        String sql = """
-            UPDATE download_segments
-            SET downloaded_bytes = ?, status = ?
-            WHERE id = ?
-        """;
+    public synchronized void updateSegment(DownloadSegment segment) {
+        try {
+            bindSegment(prepare(UPDATE_SEGMENT_SQL), segment.getTaskId(), segment).executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException("SQLite updateSegment failed", e);
+        }
+    }
+
+    @Override
+    public synchronized void saveProgress(DownloadTask task,
+                                          List<DownloadSegment> segments,
+                                          Map<Integer, byte[]> leafDigests) {
+        Connection c = null;
+        try {
+            c = connect();
+            c.setAutoCommit(false);
+
+            PreparedStatement ps = prepare(UPDATE_SEGMENT_SQL);
+            for (DownloadSegment s : segments) {
+                bindSegment(ps, task.getId(), s).addBatch();
+            }
+            ps.executeBatch();
+
+            if (!leafDigests.isEmpty()) {
+                PreparedStatement ds = prepare(
+                        "INSERT OR REPLACE INTO download_digests (task_id, leaf_index, digest) VALUES (?, ?, ?)");
+                for (Map.Entry<Integer, byte[]> e : leafDigests.entrySet()) {
+                    ds.setLong(1, task.getId());
+                    ds.setInt(2, e.getKey());
+                    ds.setBytes(3, e.getValue());
+                    ds.addBatch();
+                }
+                ds.executeBatch();
+            }
 
-        try (Connection c = connect();
-             PreparedStatement ps = c.prepareStatement(sql)) {
+            bindTask(prepare(UPDATE_TASK_SQL), task).executeUpdate();
 
-            ps.setLong(1, segment.getDownloadedBytes());
-            ps.setString(2, segment.getStatus().name());
-            ps.setLong(3, segment.getId());
+            c.commit();
+
+        } catch (SQLException e) {
+            if (c != null) rollbackQuietly(c);
+            throw new RuntimeException("SQLite saveProgress failed", e);
+        } finally {
+            if (c != null) restoreAutoCommit(c);
+        }
+    }
+
+    @Override
+    public synchronized Map<Integer, byte[]> loadLeafDigests(long taskId) {
+        Map<Integer, byte[]> result = new HashMap<>();
+
+        try {
+            PreparedStatement ps = prepare("SELECT leaf_index, digest FROM download_digests WHERE task_id = ?");
+            ps.setLong(1, taskId);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.put(rs.getInt("leaf_index"), rs.getBytes("digest"));
+                }
+            }
+            return result;
+
+        } catch (SQLException e) {
+            throw new RuntimeException("SQLite loadLeafDigests failed", e);
+        }
+    }
+
+    @Override
+    public synchronized void clearLeafDigests(long taskId) {
+        try {
+            PreparedStatement ps = prepare("DELETE FROM download_digests WHERE task_id = ?");
+            ps.setLong(1, taskId);
             ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException("SQLite clearLeafDigests failed", e);
+        }
+    }
+
+    @Override
+    public synchronized void saveMirrors(long taskId, List<String> urls) {
+        Connection c = null;
+        try {
+            c = connect();
+            c.setAutoCommit(false);
+
+            PreparedStatement del = prepare("DELETE FROM download_mirrors WHERE task_id = ?");
+            del.setLong(1, taskId);
+            del.executeUpdate();
+
+            PreparedStatement ps = prepare("INSERT INTO download_mirrors (task_id, url) VALUES (?, ?)");
+            for (String url : urls) {
+                ps.setLong(1, taskId);
+                ps.setString(2, url);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+
+            c.commit();
 
         } catch (SQLException e) {
-            throw new RuntimeException("SQLite updateSegment failed", e);
+            if (c != null) rollbackQuietly(c);
+            throw new RuntimeException("SQLite saveMirrors failed", e);
+        } finally {
+            if (c != null) restoreAutoCommit(c);
+        }
+    }
+
+    @Override
+    public synchronized List<String> loadMirrors(long taskId) {
+        List<String> result = new ArrayList<>();
+
+        try {
+            PreparedStatement ps = prepare("SELECT url FROM download_mirrors WHERE task_id = ? ORDER BY id");
+            ps.setLong(1, taskId);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(rs.getString("url"));
+                }
+            }
+            return result;
+
+        } catch (SQLException e) {
+            throw new RuntimeException("SQLite loadMirrors failed", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (PreparedStatement ps : statements.values()) {
+            try {
+                ps.close();
+            } catch (SQLException ignored) {}
+        }
+        statements.clear();
+
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {}
+            connection = null;
         }
     }
 }
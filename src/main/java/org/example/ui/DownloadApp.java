@@ -1,5 +1,6 @@
 package org.example.ui;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
@@ -9,11 +10,15 @@ import javafx.scene.control.*;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.stage.*;
+import javafx.util.Duration;
 
 import org.example.core.AppSettings;
 import org.example.core.DownloadManager;
+import org.example.downloader.AsyncHttpDownloader;
 import org.example.downloader.HttpDownloader;
+import org.example.downloader.RemoteMetadata;
 import org.example.model.DownloadTask;
+import org.example.model.TaskSnapshot;
 import org.example.observer.DownloadObserver;
 import org.example.segment.SegmentManager;
 import org.example.speed.SpeedControl;
@@ -24,6 +29,7 @@ import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class DownloadApp extends Application {
 
@@ -44,11 +50,13 @@ public class DownloadApp extends Application {
     // ===== Speed =====
     private TextField speedField;
     private Label realSpeedLabel;
-    private long lastBytes = 0;
-    private long lastTime = 0;
 
     private long currentTaskId = -1;
 
+    // ===== URL probe =====
+    private final PauseTransition probeDebounce = new PauseTransition(Duration.millis(400));
+    private CompletableFuture<RemoteMetadata> pendingProbe;
+
     private double xOffset;
     private double yOffset;
 
@@ -63,13 +71,14 @@ public class DownloadApp extends Application {
 
         manager = new DownloadManager(
                 storage,
-                new HttpDownloader(),
+                settings.isAsyncDownloader() ? new AsyncHttpDownloader() : new HttpDownloader(),
                 new SpeedControl(0),
                 new SegmentManager(),
                 settings
         );
 
         manager.addObserver(new UiObserver());
+        manager.restoreQueue();
 
         stage.initStyle(StageStyle.UNDECORATED);
 
@@ -129,7 +138,12 @@ public class DownloadApp extends Application {
         );
         extensionBox.setValue("bin");
 
-        urlField.textProperty().addListener((o, ov, nv) -> detectExtension(nv));
+        // проба лише після паузи у введенні, а не на кожну клавішу
+        probeDebounce.setOnFinished(e -> detectExtension(urlField.getText()));
+        urlField.textProperty().addListener((o, ov, nv) -> {
+            cancelPendingProbe();
+            probeDebounce.playFromStart();
+        });
 
         HBox fileRow = new HBox(10, fileNameField, extensionBox);
 
@@ -199,6 +213,11 @@ public class DownloadApp extends Application {
         log("Incomplete folder: " + settings.getIncompleteDir());
     }
 
+    @Override
+    public void stop() {
+        if (manager != null) manager.shutdown();
+    }
+
     // =========================
     // Resume window
     // =========================
@@ -259,8 +278,6 @@ public class DownloadApp extends Application {
                 manager.addDownload(urlField.getText().trim(), finalPath.toString());
 
         currentTaskId = task.getId();
-        lastBytes = 0;
-        lastTime = 0;
 
         log("Task created: " + finalPath);
     }
@@ -287,12 +304,21 @@ public class DownloadApp extends Application {
     private void detectExtension(String url) {
         if (url == null || url.isBlank()) return;
 
-        new Thread(() -> {
-            if (manager.getDownloader() instanceof HttpDownloader hd) {
-                String ext = hd.detectExtensionByHead(url.trim());
-                Platform.runLater(() -> extensionBox.setValue(ext));
-            }
-        }).start();
+        if (manager.getDownloader() instanceof HttpDownloader hd) {
+            CompletableFuture<RemoteMetadata> probe = hd.probeAsync(url.trim());
+            pendingProbe = probe;
+            probe.thenAccept(meta -> Platform.runLater(() -> {
+                // відповідь на вже застарілий URL ігноруємо
+                if (probe == pendingProbe) extensionBox.setValue(meta.extension());
+            }));
+        }
+    }
+
+    private void cancelPendingProbe() {
+        if (pendingProbe != null) {
+            pendingProbe.cancel(false);
+            pendingProbe = null;
+        }
     }
 
     // =========================
@@ -310,27 +336,6 @@ public class DownloadApp extends Application {
         }
     }
 
-    private void updateRealSpeed(DownloadTask task) {
-        long now = System.currentTimeMillis();
-
-        if (lastTime == 0) {
-            lastTime = now;
-            lastBytes = task.getDownloadedBytes();
-            return;
-        }
-
-        long dt = now - lastTime;
-        if (dt < 500) return;
-
-        long delta = task.getDownloadedBytes() - lastBytes;
-        double speed = (delta * 1000.0 / dt) / (1024 * 1024);
-
-        realSpeedLabel.setText(String.format("Actual: %.2f MB/s", speed));
-
-        lastTime = now;
-        lastBytes = task.getDownloadedBytes();
-    }
-
     // =========================
     // Settings window
     // =========================
@@ -359,10 +364,15 @@ public class DownloadApp extends Application {
             if (f != null) incompleteDirField.setText(f.getAbsolutePath());
         });
 
+        // завантажувач обирається при старті; endgame-хеджування лише в синхронному
+        CheckBox asyncBox = new CheckBox("Async downloader (after restart; no straggler hedging)");
+        asyncBox.setSelected(settings.isAsyncDownloader());
+
         Button save = new Button("Save");
         save.setOnAction(e -> {
             settings.setDownloadDir(Paths.get(downloadDirField.getText()));
             settings.setIncompleteDir(Paths.get(incompleteDirField.getText()));
+            settings.setAsyncDownloader(asyncBox.isSelected());
             settings.save();
             log("Settings saved");
             s.close();
@@ -380,6 +390,8 @@ public class DownloadApp extends Application {
         grid.add(incompleteDirField, 1, 1);
         grid.add(browseIncomplete, 2, 1);
 
+        grid.add(asyncBox, 0, 2, 3, 1);
+
         VBox root = new VBox(12, grid, save);
         root.setPadding(new Insets(12));
 
@@ -432,16 +444,22 @@ public class DownloadApp extends Application {
         public void onTaskChanged(DownloadTask task) {
             if (task.getId() != currentTaskId) return;
 
-            Platform.runLater(() -> {
-                if (task.getTotalBytes() > 0) {
-                    progressBar.setProgress(task.getProgress01());
-                    progressText.setText(
-                            "Progress: " +
-                                    (int) (task.getProgress01() * 100) + "%"
-                    );
-                }
-                updateRealSpeed(task);
-            });
+            TaskSnapshot snapshot = TaskSnapshot.of(task, 0);
+            Platform.runLater(() -> showProgress(snapshot));
+        }
+
+        // один runLater на тік, а не на кожні 8 KB
+        @Override
+        public void onProgress(List<TaskSnapshot> snapshots) {
+            for (TaskSnapshot s : snapshots) {
+                if (s.id() != currentTaskId) continue;
+
+                Platform.runLater(() -> {
+                    showProgress(s);
+                    realSpeedLabel.setText(String.format(
+                            "Actual: %.2f MB/s", s.bytesPerSec() / (1024 * 1024)));
+                });
+            }
         }
 
         @Override
@@ -450,6 +468,16 @@ public class DownloadApp extends Application {
         }
     }
 
+    private void showProgress(TaskSnapshot s) {
+        if (s.totalBytes() > 0) {
+            progressBar.setProgress(s.progress01());
+            progressText.setText(
+                    "Progress: " +
+                            (int) (s.progress01() * 100) + "%"
+            );
+        }
+    }
+
     private void log(String msg) {
         Platform.runLater(() -> logArea.appendText(msg + "\n"));
     }
@@ -2,6 +2,7 @@ package org.example.ui;
 
 import org.example.core.AppSettings;
 import org.example.core.DownloadManager;
+import org.example.downloader.AsyncHttpDownloader;
 import org.example.downloader.HttpDownloader;
 import org.example.segment.SegmentManager;
 import org.example.speed.SpeedControl;
@@ -17,10 +18,10 @@ public class Main {
         storage.init();
 
 
-        var downloader = new HttpDownloader();
+        var settings = AppSettings.load();
+        var downloader = settings.isAsyncDownloader() ? new AsyncHttpDownloader() : new HttpDownloader();
         var speedControl = new SpeedControl(0);
         var segmentManager = new SegmentManager();
-        var settings = AppSettings.load();
 
         var manager = new DownloadManager(
                 storage,
@@ -47,6 +48,7 @@ public class Main {
 
         sleep(3000);
         manager.stop(task.getId());
+        manager.shutdown();
 
 
         System.out.println("Test finished");
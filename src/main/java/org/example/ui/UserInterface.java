@@ -19,7 +19,7 @@ public class UserInterface {
         Scanner sc = new Scanner(System.in);
 
         System.out.println("Download Manager (console demo)");
-        System.out.println("Commands: add <url> <file>, start <id>, pause <id>, resume <id>, stop <id>, seg <id>, speed <bytesPerSec>, exit");
+        System.out.println("Commands: add <url> <file>, start <id>, pause <id>, resume <id>, stop <id>, seg <id>, mirror <id> <url>, digest <id> <hex>, speed <bytesPerSec>, tspeed <id> <bytesPerSec>, exit");
 
         while (true) {
             System.out.print("> ");
@@ -41,7 +41,10 @@ public class UserInterface {
                     case "resume" -> controller.resume(Long.parseLong(parts[1]));
                     case "stop" -> controller.stop(Long.parseLong(parts[1]));
                     case "seg" -> controller.printSegments(Long.parseLong(parts[1]));
+                    case "mirror" -> controller.addMirror(Long.parseLong(parts[1]), parts[2]);
+                    case "digest" -> controller.setExpectedDigest(Long.parseLong(parts[1]), parts[2]);
                     case "speed" -> controller.setSpeedLimit(Long.parseLong(parts[1]));
+                    case "tspeed" -> controller.setTaskSpeedLimit(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
                     default -> System.out.println("Unknown command");
                 }
             } catch (Exception e) {